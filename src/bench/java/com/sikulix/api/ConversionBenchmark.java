@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.api;
+
+import com.sikulix.benchmark.SyntheticScreens;
+import org.openjdk.jmh.annotations.*;
+import org.opencv.core.Mat;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * conversion between BufferedImage and Mat (in this package, since makeMat is not public)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConversionBenchmark {
+
+  @Param({"SMALL", "FULLHD"})
+  public SyntheticScreens.Size size;
+
+  // TYPE_INT_RGB (Robot capture), TYPE_3BYTE_BGR (loaded image), TYPE_4BYTE_ABGR (image with alpha)
+  @Param({"1", "5", "6"})
+  public int type;
+
+  private BufferedImage image;
+  private Mat mat;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    image = SyntheticScreens.getScreen(size, type, 0);
+    mat = Element.makeMat(image);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mat.release();
+  }
+
+  @Benchmark
+  public long makeMat() {
+    Mat converted = Element.makeMat(image);
+    long total = converted.total();
+    converted.release();
+    return total;
+  }
+
+  @Benchmark
+  public BufferedImage getBufferedImage() {
+    return Element.getBufferedImage(mat);
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.benchmark;
+
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.Finder;
+import com.sikulix.core.TileHash;
+import org.openjdk.jmh.annotations.*;
+import org.opencv.core.Mat;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * detecting the changes between two synthetic screens (some small parts changed)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChangesBenchmark {
+
+  @Param({"SMALL", "FULLHD"})
+  public SyntheticScreens.Size size;
+
+  @Param({"0", "5"})
+  public int changes;
+
+  private Picture screen;
+  private Picture changed;
+  private TileHash screenHash;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    screen = new Picture(SyntheticScreens.getScreen(size, BufferedImage.TYPE_INT_RGB, 0));
+    changed = new Picture(SyntheticScreens.getScreen(size, BufferedImage.TYPE_INT_RGB, changes));
+    screenHash = new TileHash(screen.getContentBGR());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    screen.release();
+    changed.release();
+  }
+
+  @Benchmark
+  public List<Element> detectChanges() {
+    return Finder.detectChanges(screen.getContentBGR(), changed.getContentBGR());
+  }
+
+  @Benchmark
+  public List<Element> detectChangesTiled() {
+    Mat mChanged = changed.getContentBGR();
+    return Finder.detectChanges(screen.getContentBGR(), screenHash, mChanged, new TileHash(mChanged), 50);
+  }
+
+  @Benchmark
+  public TileHash tileHash() {
+    return new TileHash(changed.getContentBGR());
+  }
+}
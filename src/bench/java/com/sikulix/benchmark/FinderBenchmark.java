@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.benchmark;
+
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.Finder;
+import com.sikulix.core.SX;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * find, findAll and findAny in a synthetic screen with and without the coarse-to-fine search<br>
+ * last seen (in memory and LastSeenIndex) and learned priors are off: every invocation searches the whole screen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FinderBenchmark {
+
+  @Param({"SMALL", "FULLHD"})
+  public SyntheticScreens.Size size;
+
+  @Param({"0", "3"})
+  public int pyramidLevels;
+
+  private Picture screen;
+  private Picture button;
+  private Picture window;
+  private Picture icon;
+  private List<Picture> targets = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    SX.setOption("CheckLastSeen", "no");
+    SX.setOption("Settings.LastSeenIndex", "no");
+    BufferedImage bScreen = SyntheticScreens.getScreen(size, BufferedImage.TYPE_INT_RGB, 0);
+    screen = new Picture(bScreen);
+    button = new Picture(SyntheticScreens.getTarget(bScreen, SyntheticScreens.Target.BUTTON));
+    window = new Picture(SyntheticScreens.getTarget(bScreen, SyntheticScreens.Target.WINDOW));
+    icon = new Picture(SyntheticScreens.getTarget(bScreen, SyntheticScreens.Target.ICON));
+    targets.add(button);
+    targets.add(window);
+    targets.add(icon);
+    if (!getFinder().find(button).isValid()) {
+      throw new IllegalStateException("FinderBenchmark: button not found in " + size);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    screen.release();
+    for (Picture target : targets) {
+      target.release();
+    }
+  }
+
+  private Finder getFinder() {
+    Finder finder = new Finder(screen);
+    finder.setPyramid(pyramidLevels);
+    finder.setLearnPriors(false);
+    return finder;
+  }
+
+  @Benchmark
+  public Element findButton() {
+    return getFinder().find(button);
+  }
+
+  @Benchmark
+  public Element findWindow() {
+    return getFinder().find(window);
+  }
+
+  @Benchmark
+  public List<Element> findAllIcons() {
+    return getFinder().findAll(icon);
+  }
+
+  @Benchmark
+  public List<Element> findAny() {
+    return getFinder().findAny(targets);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.benchmark;
+
+import com.sikulix.api.Picture;
+import com.sikulix.core.FFTMatcher;
+import org.openjdk.jmh.annotations.*;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TM_CCOEFF_NORMED of a large probe: Imgproc.matchTemplate against FFTMatcher
+ * (the measurements for Settings.FindFFT and Settings.FindFFTMinPixels)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MatchBenchmark {
+
+  @Param({"SMALL", "FULLHD"})
+  public SyntheticScreens.Size size;
+
+  @Param({"200", "400"})
+  public int probeSize;
+
+  @Param({"3", "1"})
+  public int channels;
+
+  private Mat mBase;
+  private Mat mProbe;
+  private Mat mResult;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Picture screen = new Picture(SyntheticScreens.getScreen(size, BufferedImage.TYPE_INT_RGB, 0));
+    mBase = channels == 1 ? screen.getContentGray().clone() : screen.getContentBGR().clone();
+    screen.release();
+    mProbe = mBase.submat(mBase.rows() / 4, mBase.rows() / 4 + probeSize,
+            mBase.cols() / 4, mBase.cols() / 4 + probeSize).clone();
+    mResult = new Mat(mBase.rows() - probeSize + 1, mBase.cols() - probeSize + 1, CvType.CV_32F);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mBase.release();
+    mProbe.release();
+    mResult.release();
+  }
+
+  @Benchmark
+  public Mat matchTemplate() {
+    Imgproc.matchTemplate(mBase, mProbe, mResult, Imgproc.TM_CCOEFF_NORMED);
+    return mResult;
+  }
+
+  @Benchmark
+  public Mat matchFFT() {
+    FFTMatcher.matchTemplate(mBase, mProbe, mResult);
+    return mResult;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.benchmark;
+
+import com.sikulix.api.Picture;
+import com.sikulix.api.PictureCache;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * loading Pictures from PNG files (written from the synthetic corpus) with and without the PictureCache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PictureLoadBenchmark {
+
+  @Param({"0", "64"})
+  public double cacheSize;
+
+  private File folder;
+  private URL urlScreen;
+  private URL urlButton;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    folder = Files.createTempDirectory("sxbench").toFile();
+    BufferedImage screen = SyntheticScreens.getScreen(SyntheticScreens.Size.FULLHD, BufferedImage.TYPE_3BYTE_BGR, 0);
+    File fScreen = new File(folder, "screen.png");
+    File fButton = new File(folder, "button.png");
+    ImageIO.write(screen, "png", fScreen);
+    ImageIO.write(SyntheticScreens.getTarget(screen, SyntheticScreens.Target.BUTTON), "png", fButton);
+    urlScreen = fScreen.toURI().toURL();
+    urlButton = fButton.toURI().toURL();
+    PictureCache.clear();
+    PictureCache.setSize(cacheSize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    PictureCache.clear();
+    for (File file : folder.listFiles()) {
+      file.delete();
+    }
+    folder.delete();
+  }
+
+  private Picture load(URL url) {
+    Picture picture = new Picture(url);
+    if (!picture.isValid()) {
+      throw new IllegalStateException("PictureLoadBenchmark: not loaded: " + url);
+    }
+    picture.release();
+    return picture;
+  }
+
+  @Benchmark
+  public Picture loadButton() {
+    return load(urlButton);
+  }
+
+  @Benchmark
+  public Picture loadScreen() {
+    return load(urlScreen);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.benchmark;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * a fixed corpus of generated screenshots (same seed - same pixels), so the benchmarks run headless
+ * and the results of different releases can be compared<br>
+ * a screen is a desktop gradient with windows, buttons, text lines and some icons,
+ * the targets are cut out of the screen, so they are found
+ */
+public class SyntheticScreens {
+
+  public enum Size {
+    SMALL(800, 600), FULLHD(1920, 1080);
+
+    final int width;
+    final int height;
+
+    Size(int width, int height) {
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  public enum Target {
+    // an icon placed several times on each screen (findAll)
+    ICON(32, 32),
+    BUTTON(120, 36),
+    WINDOW(400, 300);
+
+    final int width;
+    final int height;
+
+    Target(int width, int height) {
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  private static final long SEED = 20170901L;
+  public static final int ICON_COUNT = 12;
+
+  private SyntheticScreens() {
+  }
+
+  /**
+   * @param size  the screen size
+   * @param type  BufferedImage type (e.g. TYPE_INT_RGB like a Robot capture, TYPE_3BYTE_BGR like a loaded image)
+   * @param frame a variation (0 = original): each further frame has some more changed parts
+   * @return the screen
+   */
+  public static BufferedImage getScreen(Size size, int type, int frame) {
+    Random random = new Random(SEED + size.ordinal());
+    BufferedImage screen = new BufferedImage(size.width, size.height, type);
+    Graphics2D g = screen.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setPaint(new GradientPaint(0, 0, new Color(40, 70, 120), size.width, size.height, new Color(90, 140, 190)));
+    g.fillRect(0, 0, size.width, size.height);
+    for (int n = 0; n < 6; n++) {
+      int w = 200 + random.nextInt(size.width / 3);
+      int h = 150 + random.nextInt(size.height / 3);
+      int x = random.nextInt(size.width - w);
+      int y = random.nextInt(size.height - h);
+      drawWindow(g, random, x, y, w, h);
+    }
+    for (int n = 0; n < ICON_COUNT; n++) {
+      drawIcon(g, random.nextInt(size.width - 32), random.nextInt(size.height - 32));
+    }
+    Random changes = new Random(SEED + frame);
+    for (int n = 0; n < frame; n++) {
+      g.setColor(new Color(changes.nextInt(0xFFFFFF)));
+      g.fillRect(changes.nextInt(size.width - 60), changes.nextInt(size.height - 20), 60, 20);
+    }
+    g.dispose();
+    return screen;
+  }
+
+  /**
+   * @param screen a screen from getScreen()
+   * @param target which one
+   * @return a copy of the target's area (type TYPE_3BYTE_BGR like a loaded image)
+   */
+  public static BufferedImage getTarget(BufferedImage screen, Target target) {
+    if (Target.ICON.equals(target)) {
+      return getIcon();
+    }
+    Rectangle rect = getTargetRectangle(screen, target);
+    BufferedImage image = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_3BYTE_BGR);
+    Graphics2D g = image.createGraphics();
+    g.drawImage(screen.getSubimage(rect.x, rect.y, rect.width, rect.height), 0, 0, null);
+    g.dispose();
+    return image;
+  }
+
+  /**
+   * @param screen a screen from getScreen()
+   * @param target BUTTON or WINDOW (the icons have random positions)
+   * @return the target's area on the screen
+   */
+  public static Rectangle getTargetRectangle(BufferedImage screen, Target target) {
+    // the area of the first window and its button (might be partly covered by later windows or icons)
+    Random random = new Random(SEED + (screen.getWidth() == Size.SMALL.width ? 0 : 1));
+    int w = 200 + random.nextInt(screen.getWidth() / 3);
+    int h = 150 + random.nextInt(screen.getHeight() / 3);
+    int x = random.nextInt(screen.getWidth() - w);
+    int y = random.nextInt(screen.getHeight() - h);
+    if (Target.BUTTON.equals(target)) {
+      return new Rectangle(x + 8, y + h - 44, target.width, target.height);
+    }
+    return new Rectangle(x, y, Math.min(w, target.width), Math.min(h, target.height));
+  }
+
+  public static BufferedImage getIcon() {
+    BufferedImage icon = new BufferedImage(Target.ICON.width, Target.ICON.height, BufferedImage.TYPE_3BYTE_BGR);
+    Graphics2D g = icon.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    drawIcon(g, 0, 0);
+    g.dispose();
+    return icon;
+  }
+
+  private static void drawWindow(Graphics2D g, Random random, int x, int y, int w, int h) {
+    g.setColor(new Color(235, 235, 235));
+    g.fillRect(x, y, w, h);
+    g.setColor(new Color(60, 60, 60));
+    g.fillRect(x, y, w, 24);
+    g.setColor(Color.WHITE);
+    g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 12));
+    g.drawString("Window " + random.nextInt(1000), x + 8, y + 16);
+    g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+    g.setColor(Color.DARK_GRAY);
+    for (int line = y + 44; line < y + h - 50; line += 16) {
+      StringBuilder text = new StringBuilder();
+      int words = 3 + random.nextInt(8);
+      for (int n = 0; n < words; n++) {
+        text.append(Long.toString(random.nextLong() & 0xFFFFFFL, 36)).append(' ');
+      }
+      g.drawString(text.toString(), x + 10, line);
+    }
+    g.setColor(new Color(70, 130, 200));
+    g.fillRoundRect(x + 8, y + h - 44, Target.BUTTON.width, Target.BUTTON.height, 8, 8);
+    g.setColor(Color.WHITE);
+    g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 13));
+    g.drawString("OK " + random.nextInt(100), x + 40, y + h - 21);
+  }
+
+  private static void drawIcon(Graphics2D g, int x, int y) {
+    g.setColor(new Color(220, 220, 220));
+    g.fillRect(x, y, Target.ICON.width, Target.ICON.height);
+    g.setColor(new Color(250, 200, 40));
+    g.fillOval(x + 2, y + 2, 28, 28);
+    g.setColor(new Color(180, 40, 40));
+    g.fillRect(x + 10, y + 10, 12, 12);
+    g.setColor(Color.BLACK);
+    g.drawOval(x + 2, y + 2, 28, 28);
+  }
+}
@@ -25,12 +25,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.util.*;
 import java.util.List;
 
-public class Element implements Comparable<Element> {
+public class Element implements Comparable<Element>, AutoCloseable {
 
   eType eClazz = eType.ELEMENT;
   private static SXLog log = SX.getSXLog("SX.ELEMENT");
@@ -826,6 +824,19 @@ public class Element implements Comparable<Element> {
 
   private double score = -1;
 
+  /**
+   * @return for a match: how it was found (null otherwise)
+   */
+  public Finder.FindTier getFindTier() {
+    return findTier;
+  }
+
+  public void setFindTier(Finder.FindTier findTier) {
+    this.findTier = findTier;
+  }
+
+  private Finder.FindTier findTier = null;
+
   public double getWantedScore() {
     return wantedScore;
   }
@@ -852,6 +863,19 @@ public class Element implements Comparable<Element> {
 
   private Element lastSeen = null;
 
+  /**
+   * the scale this target was found at by the last multi-scale find (1 = original size)
+   */
+  public double getLastScale() {
+    return lastScale;
+  }
+
+  public void setLastScale(double lastScale) {
+    this.lastScale = lastScale;
+  }
+
+  private double lastScale = 1;
+
   private Element lastMatch = null;
   private Element lastVanish = null;
   private java.util.List<Element> lastMatches = new ArrayList<Element>();
@@ -1083,10 +1107,19 @@ public class Element implements Comparable<Element> {
     return getBufferedImage(getContent());
   }
 
+  /**
+   * the content - with a mask as a new BGRA Mat (owned by the caller),
+   * otherwise the content Mat itself (see getContentBGR())
+   *
+   * @return the content
+   */
   public Mat getContent() {
     return getContent(null);
   }
 
+  /**
+   * @return a new BGRA Mat (content and mask or full alpha) - owned by the caller
+   */
   public Mat getContentBGRA() {
     if (!hasMask()) {
       Mat mBGRA = getNewMat(mask.size(), 4, -1);
@@ -1099,10 +1132,21 @@ public class Element implements Comparable<Element> {
     return getContent(null);
   }
 
+  /**
+   * the content Mat itself - owned by this Element: it is released, when the content is replaced
+   * (e.g. with the next capture, setContent() or release()),
+   * so it must be cloned to be used further (do not release)
+   *
+   * @return the content
+   */
   public Mat getContentBGR() {
     return content;
   }
 
+  /**
+   * @return the mask itself (owned by this Element like the content, see getContentBGR())
+   * or a new full alpha Mat (owned by the caller)
+   */
   public Mat getContentA() {
     if (hasMask()) {
       return mask;
@@ -1111,6 +1155,11 @@ public class Element implements Comparable<Element> {
     }
   }
 
+  /**
+   * @param elem the part (relative to this Element) or null for all
+   * @return like getContent() - a part is a submat sharing the memory of the content
+   * (valid only as long as the content, see getContentBGR())
+   */
   public Mat getContent(Element elem) {
     if (SX.isNull(elem)) {
       return makeContent();
@@ -1132,12 +1181,20 @@ public class Element implements Comparable<Element> {
     }
   }
 
+  /**
+   * takes over the Mat without copying it: from now on it is owned by this Element
+   * and released, when the content is replaced (e.g. with the next capture or release())<br>
+   * the caller must neither release nor change it afterwards - to keep using it, give a clone<br>
+   * a BGRA Mat is split into new content and mask Mats (the given one stays with the caller)
+   *
+   * @param content 8 bit gray, BGR or BGRA
+   */
   public void setContent(Mat content) {
     List<Mat> mats = checkMat(content);
     if (mats.size() > 0) {
-      this.content = mats.get(0);
+      replaceContent(mats.get(0));
       if (mats.size() > 1) {
-        this.mask = mats.get(1);
+        replaceMask(mats.get(1));
       }
     } else {
       log.error("setContent: given CVMat not valid: %s", content);
@@ -1165,11 +1222,61 @@ public class Element implements Comparable<Element> {
   }
 
   public Element setContent() {
-    content = getNewMat();
-    mask = getNewMat();
+    replaceContent(getNewMat());
+    replaceMask(getNewMat());
     return this;
   }
 
+  /**
+   * the replaced Mat is released, if no other Element holds it (see setContent(Mat), getContentBGR())
+   */
+  private void replaceContent(Mat newContent) {
+    MatTracker.retain(newContent);
+    Mat oldContent = content;
+    synchronized (this) {
+      content = newContent;
+      if (SX.isNotNull(contentGray) && contentGray != oldContent) {
+        contentGray.release();
+      }
+      contentGray = null;
+      contentHash = 0;
+      releaseDerived();
+    }
+    MatTracker.release(oldContent);
+  }
+
+  private void replaceMask(Mat newMask) {
+    MatTracker.retain(newMask);
+    Mat oldMask = mask;
+    synchronized (this) {
+      mask = newMask;
+      contentHash = 0;
+      if (SX.isNotNull(maskMulti)) {
+        maskMulti.release();
+        maskMulti = null;
+      }
+      releaseDerived();
+    }
+    MatTracker.release(oldMask);
+  }
+
+  /**
+   * gives up content and mask: their native memory is freed at once, if no other Element holds them<br>
+   * the Element itself stays usable (e.g. for capture())
+   */
+  public void release() {
+    if (SX.isNull(content) && SX.isNull(mask)) {
+      return;
+    }
+    replaceContent(getNewMat());
+    replaceMask(getNewMat());
+  }
+
+  @Override
+  public void close() {
+    release();
+  }
+
   public static Mat getNewMat() {
     SX.loadNative(SX.NATIVES.OPENCV);
     return new Mat();
@@ -1220,6 +1327,10 @@ public class Element implements Comparable<Element> {
     return SX.isNotNull(mask) && !mask.empty();
   }
 
+  /**
+   * @return the mask itself (owned by this Element like the content, see getContentBGR())
+   * or a new empty Mat
+   */
   public Mat getMask() {
     if (hasMask()) {
       return mask;
@@ -1227,9 +1338,12 @@ public class Element implements Comparable<Element> {
     return getNewMat();
   }
 
+  /**
+   * @param mMask 8 bit single channel - taken over like the content (see setContent(Mat))
+   */
   public void setMask(Mat mMask) {
     if (mMask.type() == CvType.CV_8UC1) {
-      mask = mMask;
+      replaceMask(mMask);
     }
   }
 
@@ -1237,7 +1351,7 @@ public class Element implements Comparable<Element> {
   private Mat mask = null;
 
   public Element load() {
-    capture();
+    refresh();
     return this;
   }
 
@@ -1302,19 +1416,176 @@ public class Element implements Comparable<Element> {
   protected boolean blackColor = false;
   protected boolean whiteColor = false;
 
+  /**
+   * the attributes (plain color, gray, resize factor, ...) might be computed on first use
+   */
+  protected void checkAttributes() {
+  }
+
   public boolean isPlainColor() {
+    checkAttributes();
     return isValid() && plainColor;
   }
 
   public boolean isBlack() {
+    checkAttributes();
     return isValid() && blackColor;
   }
 
   public boolean isWhite() {
+    checkAttributes();
     return isValid() && blackColor;
   }
 
+  protected boolean grayColor = false;
+  private Boolean grayMatch = null;
+  private Mat contentGray = null;
+
+  /**
+   * @return true if the content has no color information (all channels about equal)
+   */
+  public boolean isGray() {
+    checkAttributes();
+    return isValid() && grayColor;
+  }
+
+  /**
+   * how to search this as a target: true - always in grayscale, false - never,
+   * null (default) - in grayscale if the content is gray (see isGray(), option Settings.FindGray)<br>
+   * the final candidates of a grayscale search are verified in color
+   *
+   * @param state true, false or null
+   */
+  public void setGrayMatch(Boolean state) {
+    grayMatch = state;
+  }
+
+  public Boolean getGrayMatch() {
+    return grayMatch;
+  }
+
+  public boolean shouldMatchGray() {
+    if (SX.isNotNull(grayMatch)) {
+      return grayMatch;
+    }
+    return SX.isOption("Settings.FindGray", true) && isGray();
+  }
+
+  /**
+   * the content as single channel grayscale - converted once and kept until the content changes
+   * (e.g. with the next capture)
+   *
+   * @return the gray Mat (owned by this Element - do not release)
+   */
+  public synchronized Mat getContentGray() {
+    if (SX.isNull(contentGray)) {
+      Mat mContent = getContentBGR();
+      if (mContent.empty() || mContent.channels() == 1) {
+        return mContent;
+      }
+      contentGray = getNewMat();
+      Imgproc.cvtColor(mContent, contentGray, Imgproc.COLOR_BGR2GRAY);
+    }
+    return contentGray;
+  }
+
+  private Map<String, Element> derived = new HashMap<>();
+  private Mat maskMulti = null;
+
+  /**
+   * the content (and mask) resized - e.g. the downsized probes of a coarse-to-fine search
+   * or the target in other scales - made once and kept until the content changes
+   *
+   * @param width  new width
+   * @param height new height
+   * @param gray   true: the gray content is resized (single channel)
+   * @return a Picture owned by this Element - do not release
+   */
+  public synchronized Element getResized(int width, int height, boolean gray) {
+    String key = String.format("%dx%d%s", width, height, gray ? "g" : "");
+    Element resized = derived.get(key);
+    if (SX.isNull(resized)) {
+      Size size = new Size(width, height);
+      int interpolation = width < w ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+      Mat mResized = getNewMat();
+      Imgproc.resize(gray ? getContentGray() : getContentBGR(), mResized, size, 0, 0, interpolation);
+      resized = new Picture(mResized);
+      mResized.release();
+      if (hasMask()) {
+        Mat mResizedMask = getNewMat();
+        Imgproc.resize(getMask(), mResizedMask, size, 0, 0, interpolation);
+        resized.setMask(mResizedMask);
+      }
+      derived.put(key, resized);
+    }
+    return resized;
+  }
+
+  /**
+   * @param channels number of channels of the content to match with
+   * @return the mask with the number of channels (made once) - owned by this Element
+   */
+  public synchronized Mat getMask(int channels) {
+    if (!hasMask() || mask.channels() == channels) {
+      return mask;
+    }
+    if (SX.isNull(maskMulti) || maskMulti.channels() != channels) {
+      if (SX.isNotNull(maskMulti)) {
+        maskMulti.release();
+      }
+      List<Mat> masks = new ArrayList<>();
+      for (int n = 0; n < channels; n++) {
+        masks.add(mask);
+      }
+      maskMulti = getNewMat();
+      Core.merge(masks, maskMulti);
+    }
+    return maskMulti;
+  }
+
+  private void releaseDerived() {
+    for (Element resized : derived.values()) {
+      resized.release();
+    }
+    derived.clear();
+  }
+
+  private long contentHash = 0;
+
+  /**
+   * a checksum (FNV-1a) of the content and mask - computed once and kept until the content changes
+   *
+   * @return the checksum (0 if no content)
+   */
+  public synchronized long getContentHash() {
+    if (contentHash == 0 && hasContent()) {
+      long hash = 0xcbf29ce484222325L;
+      hash = getHash(hash, content);
+      if (hasMask()) {
+        hash = getHash(hash, mask);
+      }
+      contentHash = hash == 0 ? 1 : hash;
+    }
+    return contentHash;
+  }
+
+  private static long getHash(long hash, Mat mat) {
+    if (!mat.isContinuous()) {
+      mat = mat.clone();
+    }
+    for (int value : new int[]{mat.cols(), mat.rows(), mat.type()}) {
+      hash = (hash ^ value) * 0x100000001b3L;
+    }
+    byte[] bytes = new byte[(int) (mat.total() * mat.elemSize())];
+    mat.get(0, 0, bytes);
+    for (byte b : bytes) {
+      hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
   public double getResizeFactor() {
+    checkAttributes();
     return isValid() ? resizeFactor : 1;
   }
 
@@ -1323,66 +1594,177 @@ public class Element implements Comparable<Element> {
   protected final static String PNG = "png";
   protected final static String dotPNG = "." + PNG;
 
-  protected static Mat makeMat(BufferedImage bImg) {
+  // reused per thread as long as the size does not change (repeated captures of the same region)
+  private static ThreadLocal<byte[]> makeMatBuffer = new ThreadLocal<>();
+  // larger buffers (e.g. 4K captures) are not kept per thread
+  private static int makeMatBufferMax = (int) SX.getOptionNumber("Settings.MakeMatBufferMax", 1920 * 1080 * 4);
 
-    Mat aMat = getNewMat();
-    if (bImg.getType() == BufferedImage.TYPE_INT_RGB) {
-      log.trace("makeMat: INT_RGB (%dx%d)", bImg.getWidth(), bImg.getHeight());
-      int[] data = ((DataBufferInt) bImg.getRaster().getDataBuffer()).getData();
-      ByteBuffer byteBuffer = ByteBuffer.allocate(data.length * 4);
-      IntBuffer intBuffer = byteBuffer.asIntBuffer();
-      intBuffer.put(data);
-      aMat = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC4);
-      aMat.put(0, 0, byteBuffer.array());
-      Mat oMatBGR = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC3);
-      Mat oMatA = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC1);
-      java.util.List<Mat> mixIn = new ArrayList<Mat>(Arrays.asList(new Mat[]{aMat}));
-      java.util.List<Mat> mixOut = new ArrayList<Mat>(Arrays.asList(new Mat[]{oMatA, oMatBGR}));
-      //A 0 - R 1 - G 2 - B 3 -> A 0 - B 1 - G 2 - R 3
-      Core.mixChannels(mixIn, mixOut, new MatOfInt(0, 0, 1, 3, 2, 2, 3, 1));
-      return oMatBGR;
-    } else if (bImg.getType() == BufferedImage.TYPE_3BYTE_BGR) {
-      log.trace("makeMat: 3BYTE_BGR (%dx%d)", bImg.getWidth(), bImg.getHeight());
+  private static byte[] getMakeMatBuffer(int size) {
+    if (size > makeMatBufferMax) {
+      makeMatBuffer.remove();
+      return new byte[size];
+    }
+    byte[] buffer = makeMatBuffer.get();
+    if (SX.isNull(buffer) || buffer.length != size) {
+      buffer = new byte[size];
+      makeMatBuffer.set(buffer);
+    }
+    return buffer;
+  }
+
+  protected static Mat makeMat(BufferedImage bImg) {
+    Mat aMat = null;
+    int width = bImg.getWidth();
+    int height = bImg.getHeight();
+    int type = bImg.getType();
+    if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_BGR
+            || type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE) {
+      log.trace("makeMat: INT_RGB/BGR/ARGB (%dx%d)", width, height);
+      boolean hasAlpha = type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_BGR;
+      boolean isBGR = type == BufferedImage.TYPE_INT_BGR;
+      boolean isPremultiplied = type == BufferedImage.TYPE_INT_ARGB_PRE;
+      aMat = new Mat(height, width, hasAlpha ? CvType.CV_8UC4 : CvType.CV_8UC3);
+      aMat.put(0, 0, getPixelBytes(bImg, isBGR, hasAlpha, isPremultiplied));
+      return aMat;
+    } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
+      log.trace("makeMat: 3BYTE_BGR (%dx%d)", width, height);
       byte[] data = ((DataBufferByte) bImg.getRaster().getDataBuffer()).getData();
-      aMat = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC3);
+      aMat = new Mat(height, width, CvType.CV_8UC3);
       aMat.put(0, 0, data);
       return aMat;
-    } else if (bImg.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
-      log.trace("makeMat: TYPE_4BYTE_ABGR (%dx%d)", bImg.getWidth(), bImg.getHeight());
+    } else if (type == BufferedImage.TYPE_4BYTE_ABGR) {
+      log.trace("makeMat: TYPE_4BYTE_ABGR (%dx%d)", width, height);
       byte[] data = ((DataBufferByte) bImg.getRaster().getDataBuffer()).getData();
-      aMat = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC4);
+      aMat = new Mat(height, width, CvType.CV_8UC4);
       aMat.put(0, 0, data);
       Mat mBGRA = getNewMat(aMat.size(), 4, -1);
-      List<Mat> mats = new ArrayList<Mat>();
-      Core.split(aMat, mats);
-      mats.add(mats.remove(0));
-      Core.merge(mats, mBGRA);
+      //A 0 - B 1 - G 2 - R 3 -> B 0 - G 1 - R 2 - A 3
+      Core.mixChannels(Arrays.asList(aMat), Arrays.asList(mBGRA), new MatOfInt(1, 0, 2, 1, 3, 2, 0, 3));
+      aMat.release();
       return mBGRA;
-    } else if (bImg.getType() == BufferedImage.TYPE_BYTE_GRAY) {
-      log.trace("makeMat: BYTE_GRAY (%dx%d)", bImg.getWidth(), bImg.getHeight());
+    } else if (type == BufferedImage.TYPE_BYTE_GRAY) {
+      log.trace("makeMat: BYTE_GRAY (%dx%d)", width, height);
       byte[] data = ((DataBufferByte) bImg.getRaster().getDataBuffer()).getData();
-      aMat = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC1);
+      aMat = new Mat(height, width, CvType.CV_8UC1);
       aMat.put(0, 0, data);
       return aMat;
+    } else if (width > 0 && height > 0) {
+      log.trace("makeMat: Type %d converted to 3BYTE_BGR (%dx%d)", type, width, height);
+      BufferedImage bImgBGR = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+      Graphics2D graphics = bImgBGR.createGraphics();
+      graphics.drawImage(bImg, 0, 0, null);
+      graphics.dispose();
+      return makeMat(bImgBGR);
     } else {
-      log.error("makeMat: Type not supported: %d (%dx%d)",
-              bImg.getType(), bImg.getWidth(), bImg.getHeight());
+      log.error("makeMat: Type not supported: %d (%dx%d)", type, width, height);
+    }
+    return getNewMat();
+  }
+
+  // one pass from the packed ints to the interleaved BGR(A) bytes, that are then copied to native memory
+  // (premultiplied colors are divided by alpha: the Mat has straight alpha like TYPE_INT_ARGB)
+  private static byte[] getPixelBytes(BufferedImage bImg, boolean isBGR, boolean hasAlpha, boolean isPremultiplied) {
+    int[] data = ((DataBufferInt) bImg.getRaster().getDataBuffer()).getData();
+    int pixels = bImg.getWidth() * bImg.getHeight();
+    byte[] bytes = getMakeMatBuffer(pixels * (hasAlpha ? 4 : 3));
+    for (int n = 0, b = 0; n < pixels; n++) {
+      int pixel = data[n];
+      if (isPremultiplied) {
+        pixel = getStraightAlpha(pixel);
+      }
+      if (isBGR) {
+        bytes[b++] = (byte) (pixel >> 16);
+        bytes[b++] = (byte) (pixel >> 8);
+        bytes[b++] = (byte) pixel;
+      } else {
+        bytes[b++] = (byte) pixel;
+        bytes[b++] = (byte) (pixel >> 8);
+        bytes[b++] = (byte) (pixel >> 16);
+      }
+      if (hasAlpha) {
+        bytes[b++] = (byte) (pixel >> 24);
+      }
+    }
+    return bytes;
+  }
+
+  private static int getStraightAlpha(int pixel) {
+    int alpha = pixel >>> 24;
+    if (alpha == 255) {
+      return pixel;
+    }
+    if (alpha == 0) {
+      return 0;
+    }
+    int red = Math.min(255, (((pixel >> 16) & 0xff) * 255 + alpha / 2) / alpha);
+    int green = Math.min(255, (((pixel >> 8) & 0xff) * 255 + alpha / 2) / alpha);
+    int blue = Math.min(255, ((pixel & 0xff) * 255 + alpha / 2) / alpha);
+    return (alpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * like makeMat(BufferedImage), but into the given Mat, whose native memory is reused,
+   * if size and type did not change (e.g. repeated screen captures)
+   *
+   * @param bImg the image
+   * @param mat  to be filled (BGR)
+   */
+  public static void makeMat(BufferedImage bImg, Mat mat) {
+    int type = bImg.getType();
+    if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_BGR) {
+      mat.create(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC3);
+      mat.put(0, 0, getPixelBytes(bImg, type == BufferedImage.TYPE_INT_BGR, false, false));
+    } else {
+      Mat aMat = makeMat(bImg);
+      aMat.copyTo(mat);
+      aMat.release();
     }
-    return aMat;
   }
 
   public static BufferedImage getBufferedImage(Mat mat) {
     return getBufferedImage(mat, dotPNG);
   }
 
+  /**
+   * the BufferedImage is filled directly from the Mat's data for 8-bit gray, BGR and BGRA content,
+   * other content is encoded to the given type and read back
+   *
+   * @param mat  the content
+   * @param type image type (file ending) used for the conversion of unsupported content
+   * @return the BufferedImage or null on errors
+   */
   public static BufferedImage getBufferedImage(Mat mat, String type) {
     BufferedImage bImg = null;
-    MatOfByte bytemat = new MatOfByte();
     if (SX.isNull(mat)) {
       mat = getNewMat();
     }
+    if (!mat.empty()) {
+      int width = mat.cols();
+      int height = mat.rows();
+      if (mat.type() == CvType.CV_8UC3 || mat.type() == CvType.CV_8UC1) {
+        Mat mContinuous = mat.isContinuous() ? mat : mat.clone();
+        bImg = new BufferedImage(width, height,
+                mat.type() == CvType.CV_8UC3 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY);
+        mContinuous.get(0, 0, ((DataBufferByte) bImg.getRaster().getDataBuffer()).getData());
+        if (mContinuous != mat) {
+          mContinuous.release();
+        }
+        return bImg;
+      } else if (mat.type() == CvType.CV_8UC4) {
+        // mixChannels writes into a new continuous Mat: no clone needed
+        Mat mABGR = getNewMat(mat.size(), 4, -1);
+        //B 0 - G 1 - R 2 - A 3 -> A 0 - B 1 - G 2 - R 3
+        Core.mixChannels(Arrays.asList(mat), Arrays.asList(mABGR), new MatOfInt(0, 1, 1, 2, 2, 3, 3, 0));
+        bImg = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        mABGR.get(0, 0, ((DataBufferByte) bImg.getRaster().getDataBuffer()).getData());
+        mABGR.release();
+        return bImg;
+      }
+    }
+    MatOfByte bytemat = new MatOfByte();
     Imgcodecs.imencode(type, mat, bytemat);
     byte[] bytes = bytemat.toArray();
+    bytemat.release();
     InputStream in = new ByteArrayInputStream(bytes);
     try {
       bImg = ImageIO.read(in);
@@ -1405,6 +1787,20 @@ public class Element implements Comparable<Element> {
   public Picture capture() {
     return getDevice().capture(this);
   }
+
+  /**
+   * like capture(), but only this Element keeps the captured content
+   * (the content of the previous capture is released at once)
+   *
+   * @return this Element
+   */
+  public Element refresh() {
+    Picture picture = capture();
+    if (SX.isNotNull(picture)) {
+      picture.release();
+    }
+    return this;
+  }
   //</editor-fold>
 
   //<editor-fold desc="***** show, highlight">
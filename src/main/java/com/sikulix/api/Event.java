@@ -119,6 +119,9 @@ public class Event implements Comparable {
 
   Element vanish = null;
 
+  /**
+   * @return the changed areas of an onChange event (relative to the observed region, like the matches of appear)
+   */
   public List<Element> getChanges() {
     return changes;
   }
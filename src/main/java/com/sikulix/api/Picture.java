@@ -4,7 +4,6 @@
 
 package com.sikulix.api;
 
-import com.sikulix.core.Content;
 import com.sikulix.core.Finder;
 import com.sikulix.core.SX;
 import com.sikulix.core.SXLog;
@@ -18,6 +17,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.List;
 
 public class Picture extends Element {
 
@@ -46,6 +46,7 @@ public class Picture extends Element {
     }
     urlImg = elem.urlImg;
     setAttributes();
+    setGrayMatch(elem.getGrayMatch());
   }
 
   public static Picture create(Object... args) {
@@ -156,7 +157,7 @@ public class Picture extends Element {
   }
 
   private void setContent(String fpImg) {
-    URL url = Content.onImagePath(fpImg);
+    URL url = PictureCache.onImagePath(fpImg);
     if (SX.isSet(url)) {
       setContent(url);
     } else {
@@ -172,6 +173,11 @@ public class Picture extends Element {
       setName(getNameFromURL(urlImg));
       if (urlImg != null) {
         long start = new Date().getTime();
+        if (PictureCache.get(urlImg, this)) {
+          timeToLoad = new Date().getTime() - start;
+          log.trace("getAll: from cache: (%dx%s) %s", getContent().width(), getContent().height(), urlImg);
+          return;
+        }
         String urlProto = urlImg.getProtocol();
         if (urlProto.equals("file")) {
           File imgFile = new File(urlImg.getPath());
@@ -186,6 +192,9 @@ public class Picture extends Element {
         timeToLoad = new Date().getTime() - start;
         if (isValid()) {
           setAttributes();
+          Picture master = new Picture();
+          master.setContentCached(this);
+          PictureCache.put(urlImg, master);
           log.debug("getAll: loaded: (%dx%s) %s", getContent().width(), getContent().height(), urlImg);
         } else {
           log.error("getAll: not loaded: %s", urlImg);
@@ -194,6 +203,27 @@ public class Picture extends Element {
     }
   }
 
+  /**
+   * takes content and attributes from the given Picture without evaluating them again
+   *
+   * @param cached a Picture from the PictureCache
+   */
+  void setContentCached(Picture cached) {
+    cached.checkAttributes();
+    setContent(cached.getContentBGR().clone());
+    if (cached.hasMask()) {
+      setMask(cached.getMask().clone());
+    }
+    init(0, 0, cached.getContentBGR().width(), cached.getContentBGR().height());
+    plainColor = cached.plainColor;
+    blackColor = cached.blackColor;
+    whiteColor = cached.whiteColor;
+    resizeFactor = cached.resizeFactor;
+    meanColor = cached.meanColor;
+    grayColor = cached.grayColor;
+    attributesPending = false;
+  }
+
   private String getNameFromURL(URL url) {
     String name = getName();
     if (SX.isNotNull(url)) {
@@ -231,6 +261,7 @@ public class Picture extends Element {
   private double minThreshhold = 1.0E-5;
 
   public Color getMeanColor() {
+    checkAttributes();
     return new Color(meanColor[2], meanColor[1], meanColor[0]);
   }
 
@@ -242,7 +273,19 @@ public class Picture extends Element {
     return Math.sqrt(r + g + b) < minThreshhold;
   }
 
+  // evaluated on first use: a screen capture used only as base never needs them
+  private boolean attributesPending = false;
+
   private void setAttributes() {
+    attributesPending = true;
+  }
+
+  @Override
+  protected synchronized void checkAttributes() {
+    if (!attributesPending) {
+      return;
+    }
+    attributesPending = false;
     if (!hasContent()) {
       return;
     }
@@ -279,6 +322,32 @@ public class Picture extends Element {
     if (meanColor.length > 1) {
       whiteColor = isMeanColorEqual(Color.WHITE);
     }
+    grayColor = !plainColor && isGrayContent();
+  }
+
+  private static double grayTolerance = SX.getOptionNumber("Settings.FindGrayTolerance", 8);
+
+  private boolean isGrayContent() {
+    Mat mContent = getContentBGR();
+    if (mContent.channels() == 1) {
+      return true;
+    }
+    List<Mat> channels = new ArrayList<>();
+    Core.split(mContent, channels);
+    Mat mDiff = getNewMat();
+    Mat mMaxDiff = getNewMat();
+    Core.absdiff(channels.get(0), channels.get(1), mDiff);
+    Core.absdiff(channels.get(1), channels.get(2), mMaxDiff);
+    Core.max(mDiff, mMaxDiff, mMaxDiff);
+    Core.absdiff(channels.get(0), channels.get(2), mDiff);
+    Core.max(mDiff, mMaxDiff, mMaxDiff);
+    Core.MinMaxLocResult mMinMax = hasMask() ? Core.minMaxLoc(mMaxDiff, getMask()) : Core.minMaxLoc(mMaxDiff);
+    for (Mat mat : channels) {
+      mat.release();
+    }
+    mDiff.release();
+    mMaxDiff.release();
+    return mMinMax.maxVal <= grayTolerance;
   }
   //</editor-fold>
 
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.api;
+
+import com.sikulix.core.Content;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * process-wide cache for Pictures loaded from an URL<br>
+ * entries are keyed by the resolved URL and for files additionally by modification time and size,<br>
+ * so a changed file is loaded again - the cache is bounded by a byte budget (least recently used are evicted)<br>
+ * the cached Pictures are owned by the cache: their content is released when they are dropped
+ * (through MatTracker: an Element still holding the same Mat keeps it alive)
+ */
+public class PictureCache {
+
+  private static SXLog log = SX.getSXLog("SX.PictureCache");
+
+  //<editor-fold desc="housekeeping">
+  private static PictureCache instance = null;
+
+  private long maxBytes = (long) (SX.getOptionNumber("Settings.PictureCacheSize", 64) * 1024 * 1024);
+  private long bytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  private final Map<String, URL> names = new HashMap<>();
+  private long namesVersion = -1;
+
+  private PictureCache() {
+  }
+
+  private static synchronized PictureCache get() {
+    if (SX.isNull(instance)) {
+      instance = new PictureCache();
+    }
+    return instance;
+  }
+
+  private static class Entry {
+    Picture picture;
+    long lastModified;
+    long length;
+    long bytes;
+
+    Entry(Picture picture, long lastModified, long length) {
+      this.picture = picture;
+      this.lastModified = lastModified;
+      this.length = length;
+      bytes = getBytes(picture.getContentBGR()) + getBytes(picture.getMask());
+    }
+  }
+
+  private static long getBytes(Mat mat) {
+    if (SX.isNull(mat) || mat.empty()) {
+      return 0;
+    }
+    return mat.total() * mat.elemSize();
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="configure, statistics">
+
+  /**
+   * @param megaBytes the maximum size of all cached image data (0 switches the cache off)
+   */
+  public static void setSize(double megaBytes) {
+    PictureCache cache = get();
+    synchronized (cache) {
+      cache.maxBytes = (long) (megaBytes * 1024 * 1024);
+      cache.evict(0);
+    }
+  }
+
+  public static boolean isActive() {
+    return get().maxBytes > 0;
+  }
+
+  public static long getBytes() {
+    PictureCache cache = get();
+    synchronized (cache) {
+      return cache.bytes;
+    }
+  }
+
+  public static int getCount() {
+    PictureCache cache = get();
+    synchronized (cache) {
+      return cache.entries.size();
+    }
+  }
+
+  /**
+   * @return hits, misses, evictions, cached entries, cached bytes
+   */
+  public static long[] getStatistics() {
+    PictureCache cache = get();
+    synchronized (cache) {
+      return new long[]{cache.hits, cache.misses, cache.evictions, cache.entries.size(), cache.bytes};
+    }
+  }
+
+  public static String getStatisticsString() {
+    long[] stats = getStatistics();
+    return String.format("PictureCache: hits: %d misses: %d evicted: %d (%d entries, %.1f MB)",
+            stats[0], stats[1], stats[2], stats[3], stats[4] / (1024.0 * 1024.0));
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="name resolution">
+
+  /**
+   * like Content.onImagePath, but remembers the resolution until the image path changes
+   *
+   * @param name an image name
+   * @return a valid URL or null if not found
+   */
+  static URL onImagePath(String name) {
+    PictureCache cache = get();
+    long version = Content.getImagePathVersion();
+    synchronized (cache) {
+      if (version != cache.namesVersion) {
+        cache.names.clear();
+        cache.namesVersion = version;
+      }
+      URL url = cache.names.get(name);
+      if (SX.isNotNull(url)) {
+        if (!"file".equals(url.getProtocol()) || new File(url.getPath()).exists()) {
+          return url;
+        }
+        cache.names.remove(name);
+      }
+    }
+    URL url = Content.onImagePath(name);
+    if (SX.isNotNull(url) && isActive()) {
+      synchronized (cache) {
+        if (version == cache.namesVersion) {
+          cache.names.put(name, url);
+        }
+      }
+    }
+    return url;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="get, put, invalidate">
+
+  /**
+   * @param url     the resolved image URL
+   * @param picture gets a copy of content and attributes of the cached Picture
+   * @return false if not cached
+   */
+  static boolean get(URL url, Picture picture) {
+    PictureCache cache = get();
+    if (cache.maxBytes <= 0) {
+      return false;
+    }
+    String key = url.toString();
+    long[] fileState = getFileState(url);
+    synchronized (cache) {
+      Entry entry = cache.entries.get(key);
+      if (SX.isNotNull(entry)) {
+        if (entry.lastModified == fileState[0] && entry.length == fileState[1]) {
+          cache.hits++;
+          // copied while holding the cache: an eviction might release the content
+          picture.setContentCached(entry.picture);
+          return true;
+        }
+        log.trace("changed: %s", url);
+        cache.remove(key);
+      }
+      cache.misses++;
+    }
+    return false;
+  }
+
+  /**
+   * @param url     the resolved image URL
+   * @param picture the master Picture, owned by the cache from now on (released at once if not cached)
+   */
+  static void put(URL url, Picture picture) {
+    PictureCache cache = get();
+    if (cache.maxBytes <= 0 || !picture.hasContent()) {
+      picture.release();
+      return;
+    }
+    long[] fileState = getFileState(url);
+    Entry entry = new Entry(picture, fileState[0], fileState[1]);
+    synchronized (cache) {
+      if (entry.bytes > cache.maxBytes) {
+        picture.release();
+        return;
+      }
+      cache.remove(url.toString());
+      cache.evict(entry.bytes);
+      cache.entries.put(url.toString(), entry);
+      cache.bytes += entry.bytes;
+    }
+  }
+
+  public static void invalidate(URL url) {
+    PictureCache cache = get();
+    synchronized (cache) {
+      cache.remove(url.toString());
+    }
+  }
+
+  /**
+   * drops all cached Pictures and name resolutions
+   */
+  public static void clear() {
+    PictureCache cache = get();
+    synchronized (cache) {
+      for (Entry entry : cache.entries.values()) {
+        entry.picture.release();
+      }
+      cache.entries.clear();
+      cache.names.clear();
+      cache.bytes = 0;
+    }
+  }
+
+  private void remove(String key) {
+    Entry entry = entries.remove(key);
+    if (SX.isNotNull(entry)) {
+      bytes -= entry.bytes;
+      entry.picture.release();
+    }
+  }
+
+  private void evict(long needed) {
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (bytes + needed > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, Entry> eldest = iterator.next();
+      bytes -= eldest.getValue().bytes;
+      iterator.remove();
+      eldest.getValue().picture.release();
+      evictions++;
+      log.trace("evicted: %s", eldest.getKey());
+    }
+  }
+
+  private static long[] getFileState(URL url) {
+    if ("file".equals(url.getProtocol())) {
+      File file = new File(url.getPath());
+      return new long[]{file.lastModified(), file.length()};
+    }
+    return new long[]{-1, -1};
+  }
+  //</editor-fold>
+}
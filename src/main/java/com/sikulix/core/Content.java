@@ -318,6 +318,18 @@ public class Content {
     return getImagePath().get(0);
   }
 
+  private static volatile long imagePathVersion = 0;
+
+  /**
+   * incremented with every change of the image path<br>
+   * users caching the resolution of image names (like the Picture cache) have to revalidate, if it changed
+   *
+   * @return the current version of the image path
+   */
+  public static long getImagePathVersion() {
+    return imagePathVersion;
+  }
+
   public static String getBundlePath() {
     getImagePath().init();
     return getImagePath().get(0);
@@ -2561,6 +2573,12 @@ public class Content {
   public static class ImagePath extends SXPathList {
     private ImagePath() {
       super(asURL(SX.getSXIMAGES()));
+      changed();
+    }
+
+    @Override
+    void changed() {
+      imagePathVersion++;
     }
 
     boolean init(Object... args) {
@@ -2603,8 +2621,12 @@ public class Content {
       pathList.add(url);
     }
 
+    void changed() {
+    }
+
     public void clear() {
       pathList.clear();
+      changed();
     }
 
     public String[] getAll(String filter) {
@@ -2649,6 +2671,7 @@ public class Content {
           return exists;
         }
         pathList.add(urlPath);
+        changed();
         return pathList.size() - 1;
       }
       return -1;
@@ -2693,6 +2716,7 @@ public class Content {
       URL urlPath = path instanceof URL ? ((URL) path) : asURL(path);
       if (SX.isSet(urlPath)) {
         pathList.set(n, urlPath);
+        changed();
         return true;
       }
       return false;
@@ -2702,7 +2726,9 @@ public class Content {
       if (n < 0 || n > pathList.size() - 1) {
         return "";
       }
-      return asPath(pathList.remove(n));
+      String removed = asPath(pathList.remove(n));
+      changed();
+      return removed;
     }
   }
 
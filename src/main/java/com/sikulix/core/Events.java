@@ -6,6 +6,7 @@ package com.sikulix.core;
 
 import com.sikulix.api.Element;
 import com.sikulix.api.Event;
+import org.opencv.core.Mat;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -260,75 +261,144 @@ public class Events {
       shouldRepeat = false;
     }
 
+    FrameBroker broker = null;
+    Element frameWhere = null;
+    long frameNumber = -1;
+
+    /**
+     * search the event's what in the next frame captured by the broker
+     *
+     * @return the match (not valid if not found) or null if the broker stopped
+     */
+    private Element findInNextFrame() {
+      FrameBroker.Frame frame = broker.next(frameNumber, frameWhere);
+      if (SX.isNull(frame)) {
+        return null;
+      }
+      frameNumber = frame.getNumber();
+      Finder finder = new Finder(frameWhere);
+      if (!finder.isValid()) {
+        return null;
+      }
+      return finder.find(event.getWhat());
+    }
+
+    Element lastFrame = new Element();
+    TileHash lastHash = null;
+
+    /**
+     * compare the next frame captured by the broker with the one seen before (only changed tiles are diffed)
+     *
+     * @param minimumSize minimum pixels of a change
+     * @return the changes (empty if nothing changed) or null if the broker stopped
+     */
+    private List<Element> changesInNextFrame(int minimumSize) {
+      FrameBroker.Frame frame = broker.next(frameNumber, frameWhere);
+      if (SX.isNull(frame)) {
+        return null;
+      }
+      frameNumber = frame.getNumber();
+      Mat content = frameWhere.getContentBGR();
+      TileHash hash = new TileHash(content);
+      List<Element> changes = new ArrayList<>();
+      if (SX.isNotNull(lastHash)) {
+        changes = Finder.detectChanges(lastFrame.getContentBGR(), lastHash, content, hash, minimumSize);
+      }
+      lastFrame.setContent(content);
+      lastHash = hash;
+      return changes;
+    }
+
     @Override
     public void run() {
-      event.getWhere().incrementObserveCount();
+      Element where = event.getWhere();
+      where.incrementObserveCount();
       String cType = event.getTypeShort();
       log.trace("Observe start: %s%d in %d", cType, event.getKey(), nWhere);
-      while (true) {
-        if (event.shouldRepeat()) {
-          SX.pause(event.getRepeat());
-        }
-        event.pause();
-        boolean success = false;
-        Finder.PossibleMatch possibleMatch = new Finder.PossibleMatch();
-        Element where = possibleMatch.get(event.getWhat(), event.getWhere(), nWhere);
-        if (event.isAppear()) {
-          if (!where.hasMatch()) {
+      broker = FrameBroker.subscribe(where);
+      frameWhere = new Element(where);
+      try {
+        while (true) {
+          if (event.shouldRepeat()) {
+            SX.pause(event.getRepeat());
+          }
+          event.pause();
+          boolean success = false;
+          if (event.isAppear()) {
             while (where.isObserving() && shouldRepeat) {
-              log.trace("Observe repeat: %s%d in %d", cType, event.getKey(), nWhere);
-              possibleMatch.repeat();
-              if (where.hasMatch()) {
+              Element match = findInNextFrame();
+              if (SX.isNull(match)) {
+                break;
+              }
+              if (match.isMatch()) {
+                where.setLastMatch(match);
+                event.setMatch(match);
                 success = true;
                 break;
               }
+              log.trace("Observe repeat: %s%d in %d", cType, event.getKey(), nWhere);
             }
-          } else {
-            success = true;
-          }
-          if (success) {
-            event.setMatch(where.getLastMatch());
-            success = true;
-          }
-        } else if (event.isVanish()) {
-          where.setLastVanish(null);
-          if (where.hasMatch()) {
-            Element match = where.getLastMatch();
-            where.setLastVanish(match);
+          } else if (event.isVanish()) {
+            where.setLastVanish(null);
+            Element match = findInNextFrame();
+            if (SX.isNotNull(match) && match.isMatch()) {
+              where.setLastVanish(match);
+              event.setVanish(match);
+              while (where.isObserving() && shouldRepeat) {
+                log.trace("Observe repeat: %s%d in %d", cType, event.getKey(), nWhere);
+                match = findInNextFrame();
+                if (SX.isNull(match)) {
+                  break;
+                }
+                if (match.isMatch()) {
+                  where.setLastVanish(match);
+                  event.setVanish(match);
+                } else {
+                  success = true;
+                  break;
+                }
+              }
+            }
+          } else if (event.isChange()) {
+            // onChange(minimumSize) stores it in all fields of what (see Element(int)):
+            // the minimum number of pixels (w * h) of a change to be reported
+            int minimumSize = event.getWhat().w;
             while (where.isObserving() && shouldRepeat) {
-              log.trace("Observe repeat: %s%d in %d", cType, event.getKey(), nWhere);
-              possibleMatch.repeat();
-              if (where.hasMatch()) {
-                match = where.getLastMatch();
-                where.setLastVanish(match);
-                event.setVanish(match);
-              } else {
+              List<Element> changes = changesInNextFrame(minimumSize);
+              if (SX.isNull(changes)) {
+                break;
+              }
+              if (changes.size() > 0) {
+                event.setChanges(changes);
                 success = true;
                 break;
               }
             }
+          } else {
+            log.error("Observe: Event invalid: %s", event);
           }
-        } else if (event.isChange()) {
-          log.error("Observe: onChange not implemented: %s", event);
-        } else {
-          log.error("Observe: Event invalid: %s", event);
-        }
-        if (success) {
-          event.setWhen(new Date().getTime());
-          event.incrementCount();
-          log.trace("Observe success: %s%d in %d %s", cType, event.getKey(), nWhere,
-                  (Event.TYPE.ONAPPEAR.equals(event.isAppear()) ? event.getMatch() : event.getVanish()));
-          if (event.hasHandler()) {
-            log.trace("Observe handler: %s%d in %d", cType, event.getKey(), nWhere);
-            event.getHandler().run(event);
+          if (success) {
+            event.setWhen(new Date().getTime());
+            event.incrementCount();
+            Object found = event.isAppear() ? event.getMatch() :
+                    (event.isVanish() ? event.getVanish() : event.getChanges());
+            log.trace("Observe success: %s%d in %d %s", cType, event.getKey(), nWhere, found);
+            if (event.hasHandler()) {
+              log.trace("Observe handler: %s%d in %d", cType, event.getKey(), nWhere);
+              event.getHandler().run(event);
+            }
+          } else {
+            log.trace("Observe stopped: %s%d in %d", cType, event.getKey(), nWhere);
+          }
+          if (!event.shouldRepeat()) {
+            where.decrementObserveCount();
+            break;
           }
-        } else {
-          log.trace("Observe stopped: %s%d in %d", cType, event.getKey(), nWhere);
-        }
-        if (!event.shouldRepeat()) {
-          event.getWhere().decrementObserveCount();
-          break;
         }
+      } finally {
+        broker.unsubscribe();
+        frameWhere.release();
+        lastFrame.release();
       }
     }
   }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import com.sikulix.api.Element;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * TM_CCOEFF_NORMED in the frequency domain for large probes:<br>
+ * the numerator is the correlation of the base with the zero mean probe (per channel DFT, one inverse DFT),
+ * the window variances of the base are taken from integral images<br>
+ * the scores are the same as with Imgproc.matchTemplate (within float tolerance)
+ */
+public class FFTMatcher {
+
+  private static final SXLog log = SX.getSXLog("SX.FFTMatcher");
+
+  // probes with less pixels are always matched with Imgproc.matchTemplate
+  private static double minProbePixels = SX.getOptionNumber("Settings.FindFFTMinPixels", 40000);
+
+  private FFTMatcher() {
+  }
+
+  /**
+   * cost model against Imgproc.matchTemplate, which correlates large probes in the frequency domain as well:
+   * there a forward DFT of base and probe and an inverse DFT per channel,
+   * here a forward DFT of base and probe per channel and one inverse DFT for all channels<br>
+   * both need the integral images of the base, here they may be shared between searches in the same base<br>
+   * only used with Settings.FindFFT (off by default) - MatchBenchmark shows whether there is a gain
+   *
+   * @param mBase           the base
+   * @param mProbe          the probe
+   * @param sharedIntegrals the integral images of the base are already there
+   * @return true if the FFT version should be used
+   */
+  public static boolean isCheaper(Mat mBase, Mat mProbe, boolean sharedIntegrals) {
+    if (!SX.isOption("Settings.FindFFT", false)) {
+      return false;
+    }
+    double probePixels = ((double) mProbe.rows()) * mProbe.cols();
+    if (probePixels < minProbePixels) {
+      return false;
+    }
+    int channels = mBase.channels();
+    double n = ((double) Core.getOptimalDFTSize(mBase.rows())) * Core.getOptimalDFTSize(mBase.cols());
+    double transform = n * Math.log(n) / Math.log(2);
+    double integrals = 2.0 * channels * mBase.rows() * mBase.cols();
+    double openCVCost = 3 * channels * transform + integrals;
+    double fftCost = (2 * channels + 1) * transform + (sharedIntegrals ? 0 : integrals);
+    return fftCost < openCVCost;
+  }
+
+  /**
+   * like Imgproc.matchTemplate(mBase, mProbe, mResult, Imgproc.TM_CCOEFF_NORMED)
+   *
+   * @param mBase   the base (8 bit, 1 or 3 channels)
+   * @param mProbe  the probe (same type as base)
+   * @param mResult CV_32F of size (base - probe + 1) - filled in place
+   */
+  public static void matchTemplate(Mat mBase, Mat mProbe, Mat mResult) {
+    matchTemplate(mBase, mProbe, mResult, null);
+  }
+
+  /**
+   * the integral images of a base (sum and squared sum, CV_64F) as used by matchTemplate
+   *
+   * @param mBase the base
+   * @return sum and squared sum
+   */
+  public static Mat[] getIntegrals(Mat mBase) {
+    Mat mSum = Element.getNewMat();
+    Mat mSqSum = Element.getNewMat();
+    Imgproc.integral2(mBase, mSum, mSqSum, CvType.CV_64F, CvType.CV_64F);
+    return new Mat[]{mSum, mSqSum};
+  }
+
+  /**
+   * like matchTemplate(mBase, mProbe, mResult)
+   *
+   * @param integrals the integral images of the base (see getIntegrals()) if already made for other probes
+   *                  (not released) or null
+   */
+  public static void matchTemplate(Mat mBase, Mat mProbe, Mat mResult, Mat[] integrals) {
+    long start = new Date().getTime();
+    int rows = mBase.rows() - mProbe.rows() + 1;
+    int cols = mBase.cols() - mProbe.cols() + 1;
+    int channels = mBase.channels();
+    double probePixels = ((double) mProbe.rows()) * mProbe.cols();
+
+    MatOfDouble probeMean = new MatOfDouble();
+    MatOfDouble probeStdDev = new MatOfDouble();
+    Core.meanStdDev(mProbe, probeMean, probeStdDev);
+    double[] means = probeMean.toArray();
+    double[] stdDevs = probeStdDev.toArray();
+    probeMean.release();
+    probeStdDev.release();
+    double probeNorm2 = 0;
+    for (double stdDev : stdDevs) {
+      probeNorm2 += stdDev * stdDev * probePixels;
+    }
+    if (probeNorm2 < Double.MIN_NORMAL) {
+      // like matchTemplate: a probe without variance matches everywhere
+      mResult.setTo(new Scalar(1));
+      return;
+    }
+
+    // numerator: sum over channels of correlation(base, probe - mean)
+    int dftRows = Core.getOptimalDFTSize(mBase.rows());
+    int dftCols = Core.getOptimalDFTSize(mBase.cols());
+    List<Mat> baseChannels = new ArrayList<>();
+    List<Mat> probeChannels = new ArrayList<>();
+    Core.split(mBase, baseChannels);
+    Core.split(mProbe, probeChannels);
+    Mat mPadded = MatPool.get(dftRows, dftCols, CvType.CV_32F);
+    Mat mBaseSpectrum = MatPool.get(dftRows, dftCols, CvType.CV_32F);
+    Mat mProbeSpectrum = MatPool.get(dftRows, dftCols, CvType.CV_32F);
+    Mat mSpectrum = MatPool.get(dftRows, dftCols, CvType.CV_32F);
+    Mat mProduct = MatPool.get(dftRows, dftCols, CvType.CV_32F);
+    for (int n = 0; n < channels; n++) {
+      mPadded.setTo(new Scalar(0));
+      baseChannels.get(n).convertTo(mPadded.submat(0, mBase.rows(), 0, mBase.cols()), CvType.CV_32F);
+      Core.dft(mPadded, mBaseSpectrum, 0, mBase.rows());
+      mPadded.setTo(new Scalar(0));
+      probeChannels.get(n).convertTo(mPadded.submat(0, mProbe.rows(), 0, mProbe.cols()), CvType.CV_32F,
+              1, -means[n]);
+      Core.dft(mPadded, mProbeSpectrum, 0, mProbe.rows());
+      if (n == 0) {
+        Core.mulSpectrums(mBaseSpectrum, mProbeSpectrum, mSpectrum, 0, true);
+      } else {
+        Core.mulSpectrums(mBaseSpectrum, mProbeSpectrum, mProduct, 0, true);
+        Core.add(mSpectrum, mProduct, mSpectrum);
+      }
+    }
+    Core.idft(mSpectrum, mPadded, Core.DFT_SCALE | Core.DFT_REAL_OUTPUT, rows);
+    Mat mNumerator = Element.getNewMat();
+    mPadded.submat(0, rows, 0, cols).convertTo(mNumerator, CvType.CV_64F);
+    MatPool.release(mPadded, mBaseSpectrum, mProbeSpectrum, mSpectrum, mProduct);
+    for (Mat mChannel : baseChannels) {
+      mChannel.release();
+    }
+    for (Mat mChannel : probeChannels) {
+      mChannel.release();
+    }
+
+    // denominator: sqrt(sum over channels of window variance * pixels) * probe norm
+    Mat[] baseIntegrals = SX.isNull(integrals) ? getIntegrals(mBase) : integrals;
+    Mat mWindowSum = getWindowSums(baseIntegrals[0], rows, cols, mProbe.rows(), mProbe.cols());
+    Mat mWindowSqSum = getWindowSums(baseIntegrals[1], rows, cols, mProbe.rows(), mProbe.cols());
+    if (SX.isNull(integrals)) {
+      baseIntegrals[0].release();
+      baseIntegrals[1].release();
+    }
+    Mat mVariance = Element.getNewMat();
+    Core.multiply(mWindowSum, mWindowSum, mVariance, 1.0 / probePixels);
+    Core.subtract(mWindowSqSum, mVariance, mVariance);
+    if (channels > 1) {
+      Mat mAllChannels = new Mat(1, channels, CvType.CV_64F, new Scalar(1));
+      Mat mChannelVariance = mVariance;
+      mVariance = Element.getNewMat();
+      Core.transform(mChannelVariance, mVariance, mAllChannels);
+      mChannelVariance.release();
+      mAllChannels.release();
+    }
+    Core.max(mVariance, new Scalar(0), mVariance);
+    Core.sqrt(mVariance, mVariance);
+    Core.multiply(mVariance, new Scalar(Math.sqrt(probeNorm2)), mVariance);
+
+    // like matchTemplate: |score| a bit above 1 is rounding (-> +-1), far above is a flat window (-> 0)
+    Mat mScore = Element.getNewMat();
+    Core.divide(mNumerator, mVariance, mScore);
+    Mat mInvalid = Element.getNewMat();
+    Mat mAbsScore = Element.getNewMat();
+    Core.absdiff(mScore, new Scalar(0), mAbsScore);
+    Core.compare(mAbsScore, new Scalar(1.125), mInvalid, Core.CMP_GE);
+    mScore.setTo(new Scalar(0), mInvalid);
+    Core.min(mScore, new Scalar(1), mScore);
+    Core.max(mScore, new Scalar(-1), mScore);
+    mScore.convertTo(mResult, CvType.CV_32F);
+
+    for (Mat mat : new Mat[]{mNumerator, mWindowSum, mWindowSqSum, mVariance, mScore, mInvalid, mAbsScore}) {
+      mat.release();
+    }
+    log.trace("matchTemplate: %dx%d in %dx%d: %d msec", mProbe.cols(), mProbe.rows(), mBase.cols(), mBase.rows(),
+            new Date().getTime() - start);
+  }
+
+  private static Mat getWindowSums(Mat mIntegral, int rows, int cols, int height, int width) {
+    Mat mWindowSums = Element.getNewMat();
+    Core.subtract(mIntegral.submat(height, height + rows, width, width + cols),
+            mIntegral.submat(0, rows, width, width + cols), mWindowSums);
+    Core.subtract(mWindowSums, mIntegral.submat(height, height + rows, 0, cols), mWindowSums);
+    Core.add(mWindowSums, mIntegral.submat(0, rows, 0, cols), mWindowSums);
+    return mWindowSums;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import com.sikulix.api.Element;
+
+import java.util.*;
+
+/**
+ * where targets were found before (in this JVM) - learned from the matches of find()<br>
+ * per target (content hash) and base (geometry) the places hit most often are kept together with the score,
+ * so that Finder can search them first (search priors) - a place only counts, if the target is found there
+ * about as good as learned (otherwise a similar thing there would hide a better match elsewhere)
+ */
+public class FindPriors {
+
+  private static final SXLog log = SX.getSXLog("SX.FindPriors");
+
+  private static int maxTargets = 256;
+  private static int maxPlaces = 4;
+
+  private static class Place {
+    Element area;
+    double score;
+    int hits = 1;
+    long time = new Date().getTime();
+
+    Place(Element area, double score) {
+      this.area = area;
+      this.score = score;
+    }
+  }
+
+  private static class Learned extends LinkedHashMap<Long, List<Place>> {
+    private static final long serialVersionUID = 1L;
+
+    Learned() {
+      // least recently used target first
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, List<Place>> eldest) {
+      return size() > maxTargets;
+    }
+  }
+
+  private static Map<Long, List<Place>> learned = new Learned();
+
+  private FindPriors() {
+  }
+
+  /**
+   * count the match for the place it overlaps (which moves to the match) or add it as a new place
+   * (the least hit place is dropped if there are too many)<br>
+   * the score of a place is taken from matches of a whole base search, other matches only raise it
+   * (they were accepted a bit below the learned score - it would drift down otherwise)
+   *
+   * @param target what was searched
+   * @param base   where it was searched
+   * @param match  where it was found (relative to the base)
+   */
+  public static synchronized void learn(Element target, Element base, Element match) {
+    long key = LastSeenIndex.getKey(target, base);
+    List<Place> places = learned.get(key);
+    if (SX.isNull(places)) {
+      places = new ArrayList<>();
+      learned.put(key, places);
+    }
+    Element area = new Element(match.x, match.y, match.w, match.h);
+    double score = match.getScore();
+    boolean isWholeBase = SX.isNull(match.getFindTier()) || Finder.FindTier.BASE.equals(match.getFindTier());
+    for (Place place : places) {
+      if (place.area.getRectangle().intersects(area.getRectangle())) {
+        place.area = area;
+        place.score = isWholeBase ? score : Math.max(place.score, score);
+        place.hits++;
+        place.time = new Date().getTime();
+        sort(places);
+        return;
+      }
+    }
+    places.add(new Place(area, score));
+    sort(places);
+    if (places.size() > maxPlaces) {
+      Place dropped = places.remove(places.size() - 1);
+      log.trace("learn: dropped: %s (%d hits)", dropped.area, dropped.hits);
+    }
+  }
+
+  private static void sort(List<Place> places) {
+    Collections.sort(places, new Comparator<Place>() {
+      @Override
+      public int compare(Place p1, Place p2) {
+        if (p1.hits != p2.hits) {
+          return p2.hits - p1.hits;
+        }
+        return Long.compare(p2.time, p1.time);
+      }
+    });
+  }
+
+  /**
+   * @param target what is searched
+   * @param base   where it is searched
+   * @return the places (relative to the base, with the learned score) most hit first (empty if nothing learned)
+   */
+  public static synchronized List<Element> get(Element target, Element base) {
+    List<Element> areas = new ArrayList<>();
+    List<Place> places = learned.get(LastSeenIndex.getKey(target, base));
+    if (SX.isNotNull(places)) {
+      for (Place place : places) {
+        areas.add(new Element(place.area, place.score));
+      }
+    }
+    return areas;
+  }
+
+  public static synchronized void clear() {
+    learned.clear();
+  }
+}
@@ -8,6 +8,7 @@ import com.sikulix.api.Do;
 import com.sikulix.api.Element;
 import com.sikulix.api.Picture;
 import com.sikulix.api.Target;
+import com.sikulix.devices.IDevice;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
 import org.opencv.core.*;
 import org.opencv.core.Point;
@@ -16,6 +17,14 @@ import org.opencv.imgproc.Imgproc;
 import java.awt.Rectangle;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 public class Finder {
 
@@ -24,12 +33,20 @@ public class Finder {
 
   private Element base = null;
   private Mat mBase = Element.getNewMat();
-  private Mat mResult = Element.getNewMat();
+  private Mat mBaseGray = null;
 
   private enum FindType {
     ONE, ALL
   }
 
+  /**
+   * how a match was found: at the last seen place (in memory or from the LastSeenIndex),
+   * in one of the search priors (given or learned) or by searching the whole base
+   */
+  public enum FindTier {
+    LASTSEEN, INDEX, PRIOR, BASE
+  }
+
   private Finder() {
   }
 
@@ -46,8 +63,66 @@ public class Finder {
     return !mBase.empty();
   }
 
-  public void refreshBase() {
+  public synchronized void refreshBase() {
     mBase = base.getContentBGR();
+    mBaseGray = null;
+    if (SX.isNotNull(shared)) {
+      shared.release();
+      shared = new SharedBase();
+    }
+  }
+
+  private SharedBase shared = null;
+
+  /**
+   * from now on the preprocessing of the base (downsized levels, integral images) is made only once
+   * and shared by the following searches (e.g. many find() after one capture) until release()
+   */
+  public synchronized void prepare() {
+    if (SX.isNull(shared)) {
+      shared = new SharedBase();
+    }
+  }
+
+  public synchronized boolean isPrepared() {
+    return SX.isNotNull(shared);
+  }
+
+  /**
+   * give back the shared preprocessing of the base (see prepare())<br>
+   * searches still running (e.g. the rest of a findAny(targets, true)) keep it until they are finished
+   */
+  public synchronized void release() {
+    if (SX.isNotNull(shared)) {
+      shared.release();
+      shared = null;
+    }
+  }
+
+  /**
+   * @return the shared preprocessing (if prepared) for one search - to be released by the search
+   */
+  private synchronized SharedBase acquireShared() {
+    return SX.isNull(shared) ? null : shared.acquire();
+  }
+
+  /**
+   * the base as grayscale: the base Element's cached gray content if searching the whole base
+   */
+  private synchronized Mat getBaseGray() {
+    if (SX.isNull(mBaseGray)) {
+      if (SX.isNotNull(base) && mBase == base.getContentBGR()) {
+        mBaseGray = base.getContentGray();
+      } else {
+        mBaseGray = Element.getNewMat();
+        Imgproc.cvtColor(mBase, mBaseGray, Imgproc.COLOR_BGR2GRAY);
+      }
+    }
+    return mBaseGray;
+  }
+
+  private boolean isMatchGray(Element target) {
+    return mBase.channels() > 1 && !target.isPlainColor() && target.shouldMatchGray();
   }
   //</editor-fold>
 
@@ -55,31 +130,137 @@ public class Finder {
   public Element find(Element target) {
     base.resetMatches();
     FindResult findResult = doFind(target, FindType.ONE);
-    if (SX.isNotNull(findResult) && findResult.hasNext()) {
-      base.setLastMatch(findResult.next());
-      return base.getLastMatch();
+    if (SX.isNotNull(findResult)) {
+      Element match = findResult.hasNext() ? findResult.next() : null;
+      findResult.release();
+      if (SX.isNotNull(match)) {
+        base.setLastMatch(match);
+        if (SX.isOption("CheckLastSeen") && LastSeenIndex.isActive()) {
+          LastSeenIndex.put(target, base, match);
+        }
+        if (learnPriors) {
+          FindPriors.learn(target, base, match);
+        }
+        return match;
+      }
     }
     return new Element();
   }
 
+  /**
+   * like find, but only those places are searched, where the target would overlap one of the regions
+   *
+   * @param target  what to find
+   * @param regions parts of the base (relative to the base content), e.g. the changed tiles
+   * @return the best match or an invalid Element if not found
+   */
+  public Element find(Element target, List<Element> regions) {
+    base.resetMatches();
+    Element bestMatch = null;
+    Mat mGray = isMatchGray(target) ? getBaseGray() : null;
+    for (Element region : regions) {
+      Rect rect = getSearchRect(target, region);
+      if (SX.isNull(rect)) {
+        continue;
+      }
+      Finder regionFinder = new Finder();
+      regionFinder.base = base;
+      regionFinder.mBase = mBase.submat(rect);
+      if (SX.isNotNull(mGray)) {
+        regionFinder.mBaseGray = mGray.submat(rect);
+      }
+      regionFinder.isCheckLastSeen = true;
+      regionFinder.setScales(scaleMin, scaleMax, scaleStep);
+      regionFinder.scaleConfidentScore = scaleConfidentScore;
+      FindResult findResult = regionFinder.doFind(target, FindType.ONE);
+      if (SX.isNotNull(findResult)) {
+        if (findResult.hasNext()) {
+          Element match = findResult.next();
+          if (SX.isNull(bestMatch) || match.getScore() > bestMatch.getScore()) {
+            match.translate(rect.x, rect.y);
+            bestMatch = match;
+          }
+        }
+        findResult.release();
+      }
+    }
+    if (SX.isNotNull(bestMatch)) {
+      base.setLastMatch(bestMatch);
+      return bestMatch;
+    }
+    return new Element();
+  }
+
+  private Rect getSearchRect(Element target, Element region) {
+    // with scale search the target might be found larger
+    int w = (int) Math.ceil(target.w * Math.max(1, scaleMax));
+    int h = (int) Math.ceil(target.h * Math.max(1, scaleMax));
+    int x = Math.max(0, region.x - w + 1);
+    int y = Math.max(0, region.y - h + 1);
+    int right = Math.min(mBase.cols(), region.x + region.w + w - 1);
+    int bottom = Math.min(mBase.rows(), region.y + region.h + h - 1);
+    if (right - x < target.w * Math.min(1, scaleMin) || bottom - y < target.h * Math.min(1, scaleMin)) {
+      return null;
+    }
+    return new Rect(x, y, right - x, bottom - y);
+  }
+
   public List<Element> findAll(Element target) {
     base.resetMatches();
     FindResult findResult = doFind(target, FindType.ALL);
-    List<Element> matches = findResult.getMatches();
+    List<Element> matches = null;
+    double[] scores = null;
+    if (SX.isNotNull(findResult)) {
+      matches = findResult.getMatches();
+      scores = findResult.getScores();
+      findResult.release();
+    }
+    if (SX.isNull(matches)) {
+      return new ArrayList<>();
+    }
     Collections.sort(matches);
     base.setLastMatches(matches);
-    base.setLastScores(findResult.getScores());
+    base.setLastScores(scores);
     return matches;
   }
 
   private final double resizeMinFactor = 1.5;
-  private final double[] resizeLevels = new double[]{1f, 0.4f};
-  private int resizeMaxLevel = resizeLevels.length - 1;
   private double resizeMinSim = 0.8;
   private boolean isCheckLastSeen = false;
   private static final double downSimDiff = 0.15;
+  private static double defaultMaxOverlap = SX.getOptionNumber("Settings.FindMaxOverlap", 0.3);
+  private double maxOverlap = defaultMaxOverlap;
+
+  /**
+   * findAll: a match is dropped, if it overlaps a better match by more than this
+   * (intersection over union: 0 - no overlap allowed ... 1 - all matches)
+   *
+   * @param maxOverlap 0 ... 1
+   */
+  public void setMaxOverlap(double maxOverlap) {
+    this.maxOverlap = Math.max(0, Math.min(1, maxOverlap));
+  }
+
+  public double getMaxOverlap() {
+    return maxOverlap;
+  }
 
   private FindResult doFind(Element target, FindType findType) {
+    SharedBase sharedBase = acquireShared();
+    try {
+      return doFind(target, findType, sharedBase);
+    } finally {
+      if (SX.isNotNull(sharedBase)) {
+        sharedBase.release();
+      }
+    }
+  }
+
+  /**
+   * @param sharedBase the base preprocessing to use (null: none) - given per search,
+   *                   so that release() or refreshBase() do not affect a running search
+   */
+  private FindResult doFind(Element target, FindType findType, SharedBase sharedBase) {
     if (!target.isTarget()) {
       return null;
     }
@@ -87,9 +268,7 @@ public class Finder {
     if (target.getWantedScore() < 0) {
       target.setWantedScore(0.8);
     }
-    boolean success = false;
     long begin_t = 0;
-    Core.MinMaxLocResult mMinMax = null;
     FindResult findResult = null;
     if (FindType.ONE.equals(findType) && !isCheckLastSeen && SX.isOption("CheckLastSeen")
             && target.getLastSeen().isValid()) {
@@ -97,134 +276,671 @@ public class Finder {
       Finder lastSeenFinder = new Finder(target.getLastSeen());
       lastSeenFinder.isCheckLastSeen = true;
       findResult = lastSeenFinder.doFind(new Target(target, target.getLastSeen().getScore() - 0.01), FindType.ONE);
-      if (findResult.hasNext()) {
+      if (SX.isNotNull(findResult) && findResult.hasNext()) {
         log.trace("doFind: checkLastSeen: success %d msec", new Date().getTime() - begin_t);
+        findResult.setTier(FindTier.LASTSEEN);
         return findResult;
       } else {
+        if (SX.isNotNull(findResult)) {
+          findResult.release();
+        }
         log.trace("doFind: checkLastSeen: not found %d msec", new Date().getTime() - begin_t);
       }
     }
-    double rfactor = 0;
-    boolean downSizeFound = false;
-    double downSizeScore = 0;
-    double downSizeWantedScore = 0;
-    if (FindType.ONE.equals(findType) && target.getResizeFactor() > resizeMinFactor) {
-      // ************************************************* search in downsized
+    if (FindType.ONE.equals(findType) && !isCheckLastSeen && SX.isOption("CheckLastSeen")
+            && LastSeenIndex.isActive() && SX.isNotNull(base)) {
+      begin_t = new Date().getTime();
+      findResult = doFindLastSeenIndex(target);
+      if (SX.isNotNull(findResult)) {
+        log.trace("doFind: lastSeenIndex: success %d msec", new Date().getTime() - begin_t);
+        findResult.setTier(FindTier.INDEX);
+        return findResult;
+      }
+      log.trace("doFind: lastSeenIndex: not found %d msec", new Date().getTime() - begin_t);
+    }
+    if (FindType.ONE.equals(findType) && !isCheckLastSeen && SX.isNotNull(base)) {
       begin_t = new Date().getTime();
-      double imgFactor = target.getResizeFactor();
-      Size sizeBase, sizePattern;
-      Mat mBase = Element.getNewMat();
-      Mat mPattern = Element.getNewMat();
-      Mat mPatternMask = Element.getNewMat();
-      mResult = null;
-      for (double factor : resizeLevels) {
-        rfactor = factor * imgFactor;
-        sizeBase = new Size(this.mBase.cols() / rfactor, this.mBase.rows() / rfactor);
-        sizePattern = new Size(target.getContent().cols() / rfactor, target.getContent().rows() / rfactor);
-        Imgproc.resize(this.mBase, mBase, sizeBase, 0, 0, Imgproc.INTER_AREA);
-        Imgproc.resize(target.getContentBGR(), mPattern, sizePattern, 0, 0, Imgproc.INTER_AREA);
-        Picture pPattern = new Picture(mPattern);
-        if (target.hasMask()) {
-          Imgproc.resize(target.getMask(), mPatternMask, sizePattern, 0, 0, Imgproc.INTER_AREA);
-          pPattern.setMask(mPatternMask);
+      findResult = doFindPriors(target);
+      if (SX.isNotNull(findResult)) {
+        log.trace("doFind: priors: success %d msec", new Date().getTime() - begin_t);
+        findResult.setTier(FindTier.PRIOR);
+        return findResult;
+      }
+    }
+    if (isScaleSearch()) {
+      return doFindScales(target, findType, sharedBase);
+    }
+    return doFindTarget(target, findType, sharedBase);
+  }
+
+  private static final int lastSeenMargin = 10;
+
+  //<editor-fold desc="find priors">
+  private List<Element> priors = new ArrayList<>();
+  private boolean learnPriors = SX.isOption("Settings.FindPriors", true);
+  private static final int priorMargin = 20;
+
+  /**
+   * areas of the base (relative to the base, most probable first) searched first by find(),
+   * the whole base is only searched, if the target is not found there<br>
+   * the places of former matches of the same target are searched before (see setLearnPriors())
+   *
+   * @param areas e.g. a toolbar or status bar
+   */
+  public void setPriors(List<Element> areas) {
+    priors = new ArrayList<>(areas);
+  }
+
+  public void addPrior(Element area) {
+    priors.add(area);
+  }
+
+  public List<Element> getPriors() {
+    return priors;
+  }
+
+  /**
+   * @param state true (default, option Settings.FindPriors): learn from the matches of find(),
+   *              where a target is usually found (FindPriors) and search there first
+   */
+  public void setLearnPriors(boolean state) {
+    learnPriors = state;
+  }
+
+  private FindResult doFindPriors(Element target) {
+    double scale = isScaleSearch() ? target.getLastScale() : 1;
+    if (learnPriors) {
+      // like the last seen checks: only about as good as learned, a better match might be elsewhere
+      for (Element place : FindPriors.get(target, base)) {
+        Rectangle area = new Rectangle(place.x - priorMargin, place.y - priorMargin,
+                place.w + 2 * priorMargin, place.h + 2 * priorMargin);
+        FindResult findResult = doFindInArea(target, area, scale);
+        if (SX.isNull(findResult)) {
+          continue;
         }
-        mResult = doFindMatch(target, mBase, pPattern);
-        mMinMax = Core.minMaxLoc(mResult);
-        downSizeWantedScore = ((int) ((target.getWantedScore() - downSimDiff) * 100)) / 100.0;
-        downSizeScore = mMinMax.maxVal;
-        if (downSizeScore > downSizeWantedScore) {
-          downSizeFound = true;
-          break;
+        if (findResult.getScore() >= place.getScore() - 0.01) {
+          log.trace("doFindPriors: found in learned: %s", place);
+          return findResult;
         }
+        findResult.release();
+      }
+    }
+    for (Element area : priors) {
+      FindResult findResult = doFindInArea(target, area.getRectangle(), scale);
+      if (SX.isNotNull(findResult)) {
+        log.trace("doFindPriors: found in: %s", area);
+        return findResult;
+      }
+    }
+    return null;
+  }
+  //</editor-fold>
+
+  /**
+   * search only around the place, where the target was found the last time (LastSeenIndex),
+   * accepted if about as good as then
+   */
+  private FindResult doFindLastSeenIndex(Element target) {
+    LastSeenIndex.Seen seen = LastSeenIndex.get(target, base);
+    if (SX.isNull(seen)) {
+      return null;
+    }
+    Rectangle rSeen = new Rectangle(seen.x - lastSeenMargin, seen.y - lastSeenMargin,
+            seen.w + 2 * lastSeenMargin, seen.h + 2 * lastSeenMargin);
+    FindResult findResult = doFindInArea(target, rSeen, seen.scale);
+    if (SX.isNotNull(findResult) && findResult.getScore() < seen.score - 0.01) {
+      findResult.release();
+      findResult = null;
+    }
+    return findResult;
+  }
+
+  /**
+   * search the target (at the scale) only in the area of the base
+   *
+   * @return the result having a match (offset to the base) or null
+   */
+  private FindResult doFindInArea(Element target, Rectangle area, double scale) {
+    scale = Math.round(scale * 1000) / 1000.0;
+    Element probe = scale == 1 ? target : getScaledTarget(target, scale);
+    if (SX.isNull(probe)) {
+      return null;
+    }
+    Rectangle rArea = new Rectangle(0, 0, mBase.cols(), mBase.rows()).intersection(area);
+    FindResult findResult = null;
+    if (rArea.width >= probe.w && rArea.height >= probe.h) {
+      Rect rect = new Rect(rArea.x, rArea.y, rArea.width, rArea.height);
+      Finder areaFinder = new Finder();
+      areaFinder.base = base;
+      areaFinder.mBase = mBase.submat(rect);
+      areaFinder.isCheckLastSeen = true;
+      areaFinder.pyramidLevels = pyramidLevels;
+      if (isMatchGray(target)) {
+        areaFinder.mBaseGray = getBaseGray().submat(rect);
       }
-      log.trace("downSizeFound: %s", downSizeFound);
-      log.trace("doFind: down: %%%.2f %d msec", 100 * mMinMax.maxVal, new Date().getTime() - begin_t);
+      findResult = areaFinder.doFindTarget(probe, FindType.ONE, null);
+      if (SX.isNotNull(findResult) && findResult.hasNext()) {
+        findResult.setOffset(rect.x, rect.y);
+        return findResult;
+      }
+    }
+    if (SX.isNotNull(findResult)) {
+      findResult.release();
+    }
+    return null;
+  }
+
+  private FindResult doFindTarget(Element target, FindType findType, SharedBase sharedBase) {
+    if (target.w > mBase.cols() || target.h > mBase.rows()) {
+      return null;
     }
-    if (FindType.ONE.equals(findType) && downSizeFound) {
-      // ************************************* check after downsized success
-      if (mBase.size().equals(target.getContent().size())) {
-        // trust downsized mResult, if images have same size
-        return new FindResult(mResult, target);
+    long begin_t = new Date().getTime();
+    Core.MinMaxLocResult mMinMax = null;
+    Mat mResult = null;
+    FindResult findResult = null;
+    // gray: 1 channel instead of 3 - the final candidates are verified in color (FindResult)
+    boolean matchGray = isMatchGray(target);
+    Mat mSearchBase = matchGray ? getBaseGray() : mBase;
+    if (SX.isNotNull(sharedBase)) {
+      sharedBase.add(mSearchBase);
+    }
+    if (pyramidLevels > 0 && target.getResizeFactor() > resizeMinFactor) {
+      // ************************************************* search coarse-to-fine
+      mResult = doFindPyramid(target, findType, mSearchBase, sharedBase);
+      if (SX.isNotNull(mResult)) {
+        mMinMax = Core.minMaxLoc(mResult);
+        log.trace("doFind: pyramid: %%%.2f(?%%%.2f) %d msec",
+                mMinMax.maxVal * 100, target.getWantedScore() * 100, new Date().getTime() - begin_t);
       } else {
-        int maxLocX = (int) (mMinMax.maxLoc.x * rfactor);
-        int maxLocY = (int) (mMinMax.maxLoc.y * rfactor);
-        begin_t = new Date().getTime();
-        int margin = ((int) target.getResizeFactor()) + 1;
-        Rectangle rSub = new Rectangle(Math.max(0, maxLocX - margin), Math.max(0, maxLocY - margin),
-                Math.min(target.w + 2 * margin, mBase.width()),
-                Math.min(target.h + 2 * margin, mBase.height()));
-        rSub = new Rectangle(0, 0, mBase.cols(), mBase.rows()).intersection(rSub);
-        Rect rectSub = new Rect(rSub.x, rSub.y, rSub.width, rSub.height);
-        mResult = doFindMatch(target, mBase.submat(rectSub), null);
+        // the downsized target might have been lost among similar candidates: the original decides
+        log.trace("doFind: pyramid: not found %d msec - searching in original", new Date().getTime() - begin_t);
+        mResult = doFindMatch(target, mSearchBase, null, sharedBase);
         mMinMax = Core.minMaxLoc(mResult);
-        if (mMinMax.maxVal > target.getWantedScore()) {
-          findResult = new FindResult(mResult, target, new int[]{rectSub.x, rectSub.y});
-        }
-        if (SX.isNotNull(findResult)) {
-          log.trace("doFind: after down: %%%.2f(?%%%.2f) %d msec",
-                  mMinMax.maxVal * 100, target.getWantedScore() * 100, new Date().getTime() - begin_t);
-        }
+        log.trace("doFind: search in original: %%%.2f(?%%%.2f) %d msec",
+                mMinMax.maxVal * 100, target.getWantedScore() * 100, new Date().getTime() - begin_t);
       }
-    }
-    // ************************************** search in original
-    if (((int) (100 * downSizeScore)) == 0) {
-      begin_t = new Date().getTime();
-      mResult = doFindMatch(target, mBase, null);
+    } else {
+      // ************************************** search in original
+      mResult = doFindMatch(target, mSearchBase, null, sharedBase);
       mMinMax = Core.minMaxLoc(mResult);
       if (!isCheckLastSeen) {
         log.trace("doFind: search in original: %%%.2f(?%%%.2f) %d msec",
                 mMinMax.maxVal * 100, target.getWantedScore() * 100, new Date().getTime() - begin_t);
       }
-      if (mMinMax.maxVal > target.getWantedScore()) {
-        findResult = new FindResult(mResult, target);
+    }
+    if (mMinMax.maxVal > target.getWantedScore()) {
+      findResult = new FindResult(mResult, target);
+      findResult.setMaxOverlap(maxOverlap);
+      if (FindType.ONE.equals(findType)) {
+        findResult.setBest(mMinMax);
+      }
+      if (matchGray) {
+        findResult.setVerify(mBase);
       }
+    } else {
+      MatPool.release(mResult);
     }
     log.trace("doFind: end");
     return findResult;
   }
 
-  private Mat doFindMatch(Element target, Mat mBase, Element probe) {
+  private Mat doFindMatch(Element target, Mat mBase, Element probe, SharedBase sharedBase) {
     if (SX.isNull(probe)) {
       probe = target;
     }
-    Mat mResult = Element.getNewMat();
-    Mat mProbe = probe.getContentBGR();
+    Mat mProbe = mBase.channels() == 1 ? probe.getContentGray() : probe.getContentBGR();
+    Mat mResult = MatPool.get(mBase.rows() - mProbe.rows() + 1, mBase.cols() - mProbe.cols() + 1, CvType.CV_32F);
     if (!target.isPlainColor()) {
       if (probe.hasMask()) {
-        Mat mMask = matMulti(probe.getMask(), mProbe.channels());
-        Imgproc.matchTemplate(mBase, mProbe, mResult, Imgproc.TM_CCORR_NORMED, mMask);
+        matchTemplate(mBase, mProbe, mResult, Imgproc.TM_CCORR_NORMED, probe.getMask(mProbe.channels()), sharedBase);
       } else {
-        Imgproc.matchTemplate(mBase, mProbe, mResult, Imgproc.TM_CCOEFF_NORMED);
+        matchTemplate(mBase, mProbe, mResult, Imgproc.TM_CCOEFF_NORMED, null, sharedBase);
       }
     } else {
       Mat mBasePlain = mBase;
       Mat mProbePlain = mProbe;
       if (target.isBlack()) {
+        // mBase might be a submat of the base content: never invert in place
+        mBasePlain = MatPool.get(mBase.rows(), mBase.cols(), mBase.type());
+        mProbePlain = MatPool.get(mProbe.rows(), mProbe.cols(), mProbe.type());
         Core.bitwise_not(mBase, mBasePlain);
         Core.bitwise_not(mProbe, mProbePlain);
       }
       if (probe.hasMask()) {
-        Mat mMask = matMulti(probe.getMask(), mProbe.channels());
-        Imgproc.matchTemplate(mBasePlain, mProbePlain, mResult, Imgproc.TM_SQDIFF_NORMED, mMask);
+        matchTemplate(mBasePlain, mProbePlain, mResult, Imgproc.TM_SQDIFF_NORMED, probe.getMask(mProbe.channels()),
+                null);
       } else {
-        Imgproc.matchTemplate(mBasePlain, mProbePlain, mResult, Imgproc.TM_SQDIFF_NORMED);
+        matchTemplate(mBasePlain, mProbePlain, mResult, Imgproc.TM_SQDIFF_NORMED, null, null);
       }
-      Core.subtract(Mat.ones(mResult.size(), CvType.CV_32F), mResult, mResult);
+      if (target.isBlack()) {
+        MatPool.release(mBasePlain, mProbePlain);
+      }
+      // score = 1 - difference
+      mResult.convertTo(mResult, -1, -1.0, 1.0);
     }
     return mResult;
   }
 
-  private Mat matMulti(Mat mat, int channels) {
-    if (mat.type() != CvType.CV_8UC1 || mat.channels() == channels) {
-      return mat;
+  private static double parallelMinPixels = SX.getOptionNumber("Settings.FindParallelPixels", 1000000);
+  private static final int parallelMinStripeRows = 32;
+
+  /**
+   * matchTemplate into the prepared result - for large probes in the frequency domain (FFTMatcher),
+   * for large bases in parallel:
+   * the base is split into horizontal stripes overlapping by the probe's height - 1,
+   * each stripe writes its rows directly into the result
+   */
+  private static void matchTemplate(final Mat mBase, final Mat mProbe, final Mat mResult, final int method,
+                                    final Mat mMask, SharedBase sharedBase) {
+    if (Imgproc.TM_CCOEFF_NORMED == method && SX.isNull(mMask)
+            && FFTMatcher.isCheaper(mBase, mProbe, SX.isNotNull(sharedBase))) {
+      FFTMatcher.matchTemplate(mBase, mProbe, mResult, SX.isNull(sharedBase) ? null : sharedBase.getIntegrals(mBase));
+      return;
     }
-    List<Mat> listMat = new ArrayList<>();
-    for (int n = 0; n < channels; n++) {
-      listMat.add(mat);
+    int stripes = Math.min(getFindPool().getParallelism(), mResult.rows() / parallelMinStripeRows);
+    if (stripes < 2 || ((double) mResult.rows()) * mResult.cols() < parallelMinPixels) {
+      if (SX.isNull(mMask)) {
+        Imgproc.matchTemplate(mBase, mProbe, mResult, method);
+      } else {
+        Imgproc.matchTemplate(mBase, mProbe, mResult, method, mMask);
+      }
+      return;
     }
-    Mat mResult = Element.getNewMat();
-    Core.merge(listMat, mResult);
-    return mResult;
+    final List<RecursiveAction> stripeMatches = new ArrayList<>();
+    int stripeRows = (mResult.rows() + stripes - 1) / stripes;
+    for (int start = 0; start < mResult.rows(); start += stripeRows) {
+      final int resultStart = start;
+      final int resultEnd = Math.min(start + stripeRows, mResult.rows());
+      stripeMatches.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          Mat mStripeBase = mBase.rowRange(resultStart, resultEnd + mProbe.rows() - 1);
+          Mat mStripeResult = mResult.rowRange(resultStart, resultEnd);
+          if (SX.isNull(mMask)) {
+            Imgproc.matchTemplate(mStripeBase, mProbe, mStripeResult, method);
+          } else {
+            Imgproc.matchTemplate(mStripeBase, mProbe, mStripeResult, method, mMask);
+          }
+        }
+      });
+    }
+    RecursiveAction allStripes = new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(stripeMatches);
+      }
+    };
+    if (ForkJoinTask.inForkJoinPool()) {
+      // already running in a pool (e.g. findAny): the stripes are stolen by idle workers
+      allStripes.invoke();
+    } else {
+      getFindPool().invoke(allStripes);
+    }
+  }
+
+  //<editor-fold desc="find scales">
+  private double scaleMin = SX.getOptionNumber("Settings.FindScaleMin", 1);
+  private double scaleMax = SX.getOptionNumber("Settings.FindScaleMax", 1);
+  private double scaleStep = SX.getOptionNumber("Settings.FindScaleStep", 0.25);
+  private double scaleConfidentScore = SX.getOptionNumber("Settings.FindScaleConfident", 0.95);
+  private final int scaleMinSize = 4;
+
+  /**
+   * search the target also in other sizes (e.g. the image was captured with another display scaling)<br>
+   * the scales are tried nearest to 1 first - the last scale found for a target (Element.getLastScale())
+   * even before - a match with at least the confident score ends the search, otherwise the best wins
+   *
+   * @param min  smallest scale (e.g. 0.5)
+   * @param max  largest scale (e.g. 2.0) - min = max = 1 switches the scale search off
+   * @param step step between the scales starting from 1 (e.g. 0.25)
+   */
+  public void setScales(double min, double max, double step) {
+    scaleMin = Math.min(min, max);
+    scaleMax = Math.max(min, max);
+    if (step > 0) {
+      scaleStep = step;
+    }
+  }
+
+  /**
+   * @param confidentScore a match at a scale with at least this score (and the wanted score) ends the scale search
+   */
+  public void setScaleConfident(double confidentScore) {
+    scaleConfidentScore = confidentScore;
+  }
+
+  public boolean isScaleSearch() {
+    return scaleMin != 1 || scaleMax != 1;
+  }
+
+  private List<Double> getScales(Element target) {
+    List<Double> scales = new ArrayList<>();
+    for (int n = 0; 1 + n * scaleStep <= scaleMax + 1e-6; n++) {
+      addScale(scales, 1 + n * scaleStep);
+    }
+    for (int n = 1; 1 - n * scaleStep >= scaleMin - 1e-6; n++) {
+      addScale(scales, 1 - n * scaleStep);
+    }
+    if (scaleMin > 1 || scaleMax < 1) {
+      // range not containing 1: from the bound nearest to 1
+      double start = scaleMin > 1 ? scaleMin : scaleMax;
+      double step = scaleMin > 1 ? scaleStep : -scaleStep;
+      for (double scale = start; scale >= scaleMin - 1e-6 && scale <= scaleMax + 1e-6; scale += step) {
+        addScale(scales, scale);
+      }
+    }
+    Collections.sort(scales, new Comparator<Double>() {
+      @Override
+      public int compare(Double s1, Double s2) {
+        return Double.compare(Math.abs(Math.log(s1)), Math.abs(Math.log(s2)));
+      }
+    });
+    double lastScale = target.getLastScale();
+    if (lastScale >= scaleMin - 1e-6 && lastScale <= scaleMax + 1e-6) {
+      scales.remove(lastScale);
+      scales.add(0, lastScale);
+    }
+    return scales;
+  }
+
+  private void addScale(List<Double> scales, double scale) {
+    scale = Math.round(scale * 1000) / 1000.0;
+    if (scale > 0 && scale >= scaleMin - 1e-6 && scale <= scaleMax + 1e-6 && !scales.contains(scale)) {
+      scales.add(scale);
+    }
+  }
+
+  private FindResult doFindScales(Element target, FindType findType, SharedBase sharedBase) {
+    long begin_t = new Date().getTime();
+    FindResult bestResult = null;
+    double bestScore = 0;
+    double bestScale = 1;
+    double confidentScore = Math.max(scaleConfidentScore, target.getWantedScore());
+    for (double scale : getScales(target)) {
+      Element scaledTarget = scale == 1 ? target : getScaledTarget(target, scale);
+      if (SX.isNull(scaledTarget)) {
+        continue;
+      }
+      FindResult findResult = doFindTarget(scaledTarget, findType, sharedBase);
+      double score = SX.isNotNull(findResult) && findResult.hasNext() ? findResult.getScore() : -1;
+      log.trace("doFindScales: scale %.3f: %%%.2f", scale, score * 100);
+      if (score > bestScore) {
+        if (SX.isNotNull(bestResult)) {
+          bestResult.release();
+        }
+        bestResult = findResult;
+        bestScore = score;
+        bestScale = scale;
+      } else if (SX.isNotNull(findResult)) {
+        findResult.release();
+      }
+      if (score >= confidentScore) {
+        break;
+      }
+    }
+    if (SX.isNotNull(bestResult)) {
+      target.setLastScale(bestScale);
+      log.trace("doFindScales: scale %.3f: %%%.2f %d msec", bestScale, bestScore * 100,
+              new Date().getTime() - begin_t);
+    }
+    return bestResult;
+  }
+
+  /**
+   * @return the target resized to the scale (same wanted score) or null, if too small or larger than the base
+   * (kept by the target - see Element.getResized())
+   */
+  private Element getScaledTarget(Element target, double scale) {
+    int width = (int) Math.round(target.w * scale);
+    int height = (int) Math.round(target.h * scale);
+    if (width < scaleMinSize || height < scaleMinSize || width > mBase.cols() || height > mBase.rows()) {
+      return null;
+    }
+    Element scaledTarget = target.getResized(width, height, false);
+    scaledTarget.setWantedScore(target.getWantedScore());
+    scaledTarget.setScore(target.getScore());
+    scaledTarget.setGrayMatch(target.getGrayMatch());
+    return scaledTarget;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="find pyramid">
+  private int pyramidLevels = (int) SX.getOptionNumber("Settings.FindPyramidLevels", 3);
+  private double[] pyramidSimDiffs = new double[]{downSimDiff};
+  private int pyramidMaxCandidates = (int) SX.getOptionNumber("Settings.FindPyramidCandidates", 100);
+  private int pyramidMaxCandidatesOne = (int) SX.getOptionNumber("Settings.FindPyramidCandidatesOne", 10);
+
+  /**
+   * configure the coarse-to-fine search, that is used for targets, that can be downsized<br>
+   * level 0 is the original, the coarsest level downsizes the target to about 12 pixels
+   *
+   * @param levels   number of downsized levels (0 switches the pyramid off)
+   * @param simDiffs per level (level 1 first) how much a candidate's score might be below the wanted score
+   *                 (the last value is used for all further levels)
+   */
+  public void setPyramid(int levels, double... simDiffs) {
+    pyramidLevels = Math.max(0, levels);
+    if (simDiffs.length > 0) {
+      pyramidSimDiffs = simDiffs;
+    }
+  }
+
+  public int getPyramidLevels() {
+    return pyramidLevels;
+  }
+
+  private double getPyramidMinScore(Element target, int level) {
+    if (level < 1) {
+      return target.getWantedScore();
+    }
+    return target.getWantedScore() - pyramidSimDiffs[Math.min(level, pyramidSimDiffs.length) - 1];
+  }
+
+  /**
+   * search the downsized target in the downsized base on the coarsest level,
+   * then refine the candidates level by level only in their surroundings
+   *
+   * @return the result matrix in original size (scores only around the surviving candidates) or null if nothing found
+   * (the caller then searches in the original)
+   */
+  private Mat doFindPyramid(Element target, FindType findType, Mat mSearchBase, SharedBase sharedBase) {
+    int levels = pyramidLevels;
+    double[] factors = new double[levels + 1];
+    for (int n = 0; n <= levels; n++) {
+      factors[n] = getPyramidFactor(Math.pow(target.getResizeFactor(), ((double) n) / levels), n == levels);
+    }
+    Mat[] bases = new Mat[levels + 1];
+    Element[] probes = new Element[levels + 1];
+    bases[0] = mSearchBase;
+    probes[0] = target;
+    int maxCandidates = FindType.ONE.equals(findType) ? pyramidMaxCandidatesOne : pyramidMaxCandidates;
+    List<Point> candidates = new ArrayList<>();
+    int level = levels;
+    int lastStartLevel = Math.max(1, levels - 1);
+    for (; level >= lastStartLevel; level--) {
+      Element probe = getPyramidProbe(probes, bases, factors, level, sharedBase);
+      if (SX.isNull(probe)) {
+        continue;
+      }
+      Mat mLevelResult = doFindMatch(target, bases[level], probe, sharedBase);
+      candidates = getPyramidCandidates(mLevelResult, probe, getPyramidMinScore(target, level), maxCandidates);
+      MatPool.release(mLevelResult);
+      log.trace("doFindPyramid: level %d (1/%.1f): %d candidates", level, factors[level], candidates.size());
+      if (candidates.size() > 0) {
+        break;
+      }
+    }
+    if (candidates.size() == 0) {
+      releasePyramid(bases, probes, sharedBase);
+      return null;
+    }
+    if (FindType.ALL.equals(findType) && candidates.size() >= maxCandidates) {
+      log.trace("doFindPyramid: too many candidates - searching in original");
+      releasePyramid(bases, probes, sharedBase);
+      return doFindMatch(target, mSearchBase, null, sharedBase);
+    }
+    Mat mLevelResult = null;
+    for (int n = level - 1; n >= 0; n--) {
+      Element probe = getPyramidProbe(probes, bases, factors, n, sharedBase);
+      Mat mLevelBase = bases[n];
+      double scale = factors[n + 1] / factors[n];
+      int margin = ((int) Math.ceil(scale)) + 1;
+      double minScore = getPyramidMinScore(target, n);
+      Rectangle rLevelBase = new Rectangle(0, 0, mLevelBase.cols(), mLevelBase.rows());
+      if (n == 0) {
+        mLevelResult = MatPool.get(mLevelBase.rows() - probe.h + 1, mLevelBase.cols() - probe.w + 1, CvType.CV_32F);
+        mLevelResult.setTo(new Scalar(0));
+      }
+      List<Point> refined = new ArrayList<>();
+      for (Point candidate : candidates) {
+        int x = (int) Math.round(candidate.x * scale);
+        int y = (int) Math.round(candidate.y * scale);
+        Rectangle rSub = rLevelBase.intersection(
+                new Rectangle(x - margin, y - margin, probe.w + 2 * margin, probe.h + 2 * margin));
+        if (rSub.width < probe.w || rSub.height < probe.h) {
+          continue;
+        }
+        Rect rectSub = new Rect(rSub.x, rSub.y, rSub.width, rSub.height);
+        Mat mSubResult = doFindMatch(target, mLevelBase.submat(rectSub), probe, sharedBase);
+        Core.MinMaxLocResult mMinMax = Core.minMaxLoc(mSubResult);
+        if (mMinMax.maxVal > minScore) {
+          if (n == 0) {
+            Mat mDest = mLevelResult.submat(new Rect(rSub.x, rSub.y, mSubResult.cols(), mSubResult.rows()));
+            Core.max(mDest, mSubResult, mDest);
+          }
+          refined.add(new Point(rSub.x + mMinMax.maxLoc.x, rSub.y + mMinMax.maxLoc.y));
+        }
+        MatPool.release(mSubResult);
+      }
+      log.trace("doFindPyramid: level %d (1/%.1f): %d refined", n, factors[n], refined.size());
+      candidates = refined;
+      if (candidates.size() == 0) {
+        MatPool.release(mLevelResult);
+        releasePyramid(bases, probes, sharedBase);
+        return null;
+      }
+    }
+    releasePyramid(bases, probes, sharedBase);
+    return mLevelResult;
+  }
+
+  /**
+   * the downsize factors are taken from a grid of 8 steps per octave,
+   * so that targets of different size share the same base levels (see prepare())
+   */
+  private double getPyramidFactor(double factor, boolean coarsest) {
+    if (factor <= 1) {
+      return 1;
+    }
+    double steps = Math.log(factor) / Math.log(2) * pyramidFactorSteps;
+    // the coarsest probe must not get smaller than intended
+    steps = coarsest ? Math.floor(steps) : Math.round(steps);
+    return Math.pow(2, Math.max(1, steps) / pyramidFactorSteps);
+  }
+
+  private static final int pyramidFactorSteps = 8;
+
+  private void releasePyramid(Mat[] bases, Element[] probes, SharedBase sharedBase) {
+    // the probes are kept by the target (Element.getResized())
+    for (int n = 1; n < bases.length; n++) {
+      if (SX.isNull(sharedBase) || !sharedBase.isShared(bases[n])) {
+        MatPool.release(bases[n]);
+      }
+    }
+  }
+
+  private Element getPyramidProbe(Element[] probes, Mat[] bases, double[] factors, int level,
+                                  SharedBase sharedBase) {
+    if (SX.isNull(probes[level])) {
+      Element target = probes[0];
+      Mat mLevelBase = bases[0];
+      Size sizePattern = new Size(target.w / factors[level], target.h / factors[level]);
+      Size sizeBase = new Size(mLevelBase.cols() / factors[level], mLevelBase.rows() / factors[level]);
+      if (sizePattern.width > sizeBase.width || sizePattern.height > sizeBase.height) {
+        return null;
+      }
+      probes[level] = target.getResized((int) sizePattern.width, (int) sizePattern.height,
+              mLevelBase.channels() == 1);
+      if (SX.isNotNull(sharedBase)) {
+        bases[level] = sharedBase.getLevel(mLevelBase, factors[level]);
+      } else {
+        bases[level] = MatPool.get((int) sizeBase.height, (int) sizeBase.width, mLevelBase.type());
+        Imgproc.resize(mLevelBase, bases[level], sizeBase, 0, 0, Imgproc.INTER_AREA);
+      }
+    }
+    return probes[level];
+  }
+
+  private List<Point> getPyramidCandidates(Mat mLevelResult, Element probe, double minScore, int maxCandidates) {
+    List<Point> candidates = new ArrayList<>();
+    for (Peak peak : getPeaks(mLevelResult, minScore)) {
+      if (candidates.size() >= maxCandidates) {
+        break;
+      }
+      boolean suppressed = false;
+      for (Point candidate : candidates) {
+        if (Math.abs(peak.x - candidate.x) <= probe.w / 2 && Math.abs(peak.y - candidate.y) <= probe.h / 2) {
+          suppressed = true;
+          break;
+        }
+      }
+      if (!suppressed) {
+        candidates.add(new Point(peak.x, peak.y));
+      }
+    }
+    return candidates;
+  }
+  //</editor-fold>
+
+  private static class Peak {
+    int x;
+    int y;
+    double score;
+
+    Peak(int x, int y, double score) {
+      this.x = x;
+      this.y = y;
+      this.score = score;
+    }
+  }
+
+  /**
+   * all local maxima (3x3 neighbourhood) above the score in one pass over the result
+   *
+   * @param mResult  a matchTemplate result (CV_32F)
+   * @param minScore only peaks with a higher score
+   * @return the peaks, best first (equal scores in row order like minMaxLoc)
+   */
+  private static List<Peak> getPeaks(Mat mResult, double minScore) {
+    Mat mDilated = MatPool.get(mResult.rows(), mResult.cols(), CvType.CV_32F);
+    Mat mPeaks = MatPool.get(mResult.rows(), mResult.cols(), CvType.CV_8UC1);
+    Mat mAbove = MatPool.get(mResult.rows(), mResult.cols(), CvType.CV_8UC1);
+    Imgproc.dilate(mResult, mDilated, new Mat());
+    Core.compare(mResult, mDilated, mPeaks, Core.CMP_GE);
+    Core.compare(mResult, new Scalar(minScore), mAbove, Core.CMP_GT);
+    Core.bitwise_and(mPeaks, mAbove, mPeaks);
+    MatOfPoint mLocations = new MatOfPoint();
+    Core.findNonZero(mPeaks, mLocations);
+    MatPool.release(mDilated, mPeaks, mAbove);
+    List<Peak> peaks = new ArrayList<>();
+    if (!mLocations.empty()) {
+      for (Point location : mLocations.toArray()) {
+        int x = (int) location.x;
+        int y = (int) location.y;
+        peaks.add(new Peak(x, y, mResult.get(y, x)[0]));
+      }
+    }
+    mLocations.release();
+    Collections.sort(peaks, new Comparator<Peak>() {
+      @Override
+      public int compare(Peak p1, Peak p2) {
+        if (p1.score != p2.score) {
+          return p1.score > p2.score ? -1 : 1;
+        }
+        return p1.y != p2.y ? p1.y - p2.y : p1.x - p2.x;
+      }
+    });
+    return peaks;
   }
 
   private static class FindResult implements Iterator<Element> {
@@ -250,7 +966,6 @@ public class Finder {
 
     private Element target = null;
     private Mat result = null;
-    private Core.MinMaxLocResult resultMinMax = null;
     private int offX = 0;
     private int offY = 0;
 
@@ -261,45 +976,189 @@ public class Finder {
     private int currentX = -1;
     private int currentY = -1;
 
+    // extracted from the result in one pass at the first hasNext(), best first
+    private List<Peak> peaks = null;
+    private int peakIndex = 0;
+    // find(): only the best place (minMaxLoc) is of interest
+    private Peak bestPeak = null;
+    private boolean bestDropped = false;
+    private double maxOverlap = defaultMaxOverlap;
+    // the accepted matches by grid cell (cell size = target size): only neighbour cells can overlap
+    private Map<Long, List<int[]>> accepted = new HashMap<>();
+
+    private Mat verifyBase = null;
+    private int verifiedIndex = -1;
+    private double verifiedScore = -1;
+
+    /**
+     * the result was searched in grayscale: each candidate is matched again in color at its place,
+     * candidates not reaching the wanted score are dropped, the others get the lower of both scores
+     *
+     * @param mBase the colored base (same geometry as the searched one)
+     */
+    public void setVerify(Mat mBase) {
+      verifyBase = mBase;
+    }
+
+    /**
+     * only the best place is wanted (find()): it is taken from the minMaxLoc of the search,
+     * the peaks of the result are only extracted, if the best place is dropped by the color verification
+     *
+     * @param mMinMax the minMaxLoc of the result
+     */
+    public void setBest(Core.MinMaxLocResult mMinMax) {
+      bestPeak = new Peak((int) mMinMax.maxLoc.x, (int) mMinMax.maxLoc.y, mMinMax.maxVal);
+    }
+
+    public void setMaxOverlap(double maxOverlap) {
+      this.maxOverlap = maxOverlap;
+    }
+
+    public void setOffset(int x, int y) {
+      offX = x;
+      offY = y;
+    }
+
+    private FindTier tier = FindTier.BASE;
+
+    public void setTier(FindTier tier) {
+      this.tier = tier;
+    }
+
+    /**
+     * @return the score of the candidate found by the last hasNext()
+     */
+    public double getScore() {
+      return currentScore;
+    }
+
     public boolean hasNext() {
-      resultMinMax = Core.minMaxLoc(result);
-      currentScore = resultMinMax.maxVal;
-      currentX = (int) resultMinMax.maxLoc.x;
-      currentY = (int) resultMinMax.maxLoc.y;
-      if (firstScore < 0) {
-        firstScore = currentScore;
-      }
-      double targetScore = target.getScore();
-      double scoreMin = firstScore - scoreMaxDiff;
-      if (currentScore > targetScore && currentScore > scoreMin) {
-        return true;
+      // a Picture has no score (-1): only candidates above the wanted score are of interest
+      double minScore = Math.max(target.getScore(), target.getWantedScore());
+      if (SX.isNull(peaks)) {
+        if (SX.isNotNull(bestPeak)) {
+          peaks = new ArrayList<>();
+          if (bestPeak.score > minScore) {
+            peaks.add(bestPeak);
+          }
+        } else {
+          peaks = getPeaks(result, minScore);
+        }
+      }
+      for (; peakIndex < peaks.size(); peakIndex++) {
+        Peak peak = peaks.get(peakIndex);
+        if (firstScore < 0) {
+          firstScore = peak.score;
+        }
+        if (peak.score <= firstScore - scoreMaxDiff) {
+          peakIndex = peaks.size();
+          break;
+        }
+        if (isSuppressed(peak)) {
+          continue;
+        }
+        currentX = peak.x;
+        currentY = peak.y;
+        currentScore = peak.score;
+        if (SX.isNull(verifyBase)) {
+          return true;
+        }
+        if (verifiedIndex != peakIndex) {
+          verifiedIndex = peakIndex;
+          verifiedScore = getColorScore(currentX, currentY);
+        }
+        if (verifiedScore > Math.max(target.getScore(), target.getWantedScore())) {
+          currentScore = Math.min(peak.score, verifiedScore);
+          return true;
+        }
+        log.trace("hasNext: (%d, %d) gray %%%.2f color %%%.2f - dropped", currentX, currentY,
+                peak.score * 100, verifiedScore * 100);
+        if (SX.isNotNull(bestPeak)) {
+          bestDropped = true;
+        }
+      }
+      if (bestDropped) {
+        // the next best candidates might pass the verification
+        bestPeak = null;
+        bestDropped = false;
+        peaks = null;
+        peakIndex = 0;
+        verifiedIndex = -1;
+        return hasNext();
       }
       return false;
     }
 
+    /**
+     * non-maximum suppression: a candidate is dropped, if its area overlaps the area of an already accepted
+     * (better) match by more than maxOverlap (intersection over union)
+     */
+    private boolean isSuppressed(Peak peak) {
+      int w = target.w;
+      int h = target.h;
+      int cellX = peak.x / w;
+      int cellY = peak.y / h;
+      for (int cx = cellX - 1; cx <= cellX + 1; cx++) {
+        for (int cy = cellY - 1; cy <= cellY + 1; cy++) {
+          List<int[]> cell = accepted.get(getCellKey(cx, cy));
+          if (SX.isNull(cell)) {
+            continue;
+          }
+          for (int[] match : cell) {
+            int overlapW = w - Math.abs(peak.x - match[0]);
+            int overlapH = h - Math.abs(peak.y - match[1]);
+            if (overlapW <= 0 || overlapH <= 0) {
+              continue;
+            }
+            double intersection = ((double) overlapW) * overlapH;
+            if (intersection / (2.0 * w * h - intersection) > maxOverlap) {
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    private void accept(int x, int y) {
+      long key = getCellKey(x / target.w, y / target.h);
+      List<int[]> cell = accepted.get(key);
+      if (SX.isNull(cell)) {
+        cell = new ArrayList<>();
+        accepted.put(key, cell);
+      }
+      cell.add(new int[]{x, y});
+    }
+
+    private static long getCellKey(int cellX, int cellY) {
+      return (((long) cellX) << 32) | (cellY & 0xffffffffL);
+    }
+
+    private double getColorScore(int x, int y) {
+      Mat mProbe = target.getContentBGR();
+      Mat mWindow = verifyBase.submat(new Rect(x, y, mProbe.cols(), mProbe.rows()));
+      Mat mScore = MatPool.get(1, 1, CvType.CV_32F);
+      if (target.hasMask()) {
+        Imgproc.matchTemplate(mWindow, mProbe, mScore, Imgproc.TM_CCORR_NORMED, target.getMask(mProbe.channels()));
+      } else {
+        Imgproc.matchTemplate(mWindow, mProbe, mScore, Imgproc.TM_CCOEFF_NORMED);
+      }
+      double score = mScore.get(0, 0)[0];
+      MatPool.release(mScore);
+      return score;
+    }
+
     public Element next() {
       Element match = null;
       if (hasNext()) {
         match = new Element(new Element(currentX + offX, currentY + offY, target.w, target.h), currentScore);
-        int margin = getPurgeMargin();
-        Range rangeX = new Range(Math.max(currentX - margin, 0), currentX + 1);
-        Range rangeY = new Range(Math.max(currentY - margin, 0), currentY + 1);
-        result.colRange(rangeX).rowRange(rangeY).setTo(new Scalar(0f));
+        match.setFindTier(tier);
+        accept(currentX, currentY);
+        peakIndex++;
       }
       return match;
     }
 
-    private int getPurgeMargin() {
-      if (currentScore < 0.95) {
-        return 4;
-      } else if (currentScore < 0.85) {
-        return 8;
-      } else if (currentScore < 0.71) {
-        return 16;
-      }
-      return 2;
-    }
-
     double bestScore = 0;
     double meanScore = 0;
     double stdDevScore = 0;
@@ -336,6 +1195,14 @@ public class Finder {
       return Math.sqrt(stdDev / doubles.size());
     }
 
+    /**
+     * give back the result matrix to the MatPool (the FindResult must not be used afterwards)
+     */
+    public void release() {
+      MatPool.release(result);
+      result = null;
+    }
+
     @Override
     public void remove() {
     }
@@ -343,86 +1210,221 @@ public class Finder {
   //</editor-fold>
 
   //<editor-fold desc="find extended">
+  private static ForkJoinPool findPool = null;
+
+  /**
+   * the pool shared by all Finders for parallel sub-searches
+   * (size: Settings.FindThreads, default number of processors)
+   *
+   * @return the pool
+   */
+  public static synchronized ForkJoinPool getFindPool() {
+    if (SX.isNull(findPool)) {
+      int threads = (int) SX.getOptionNumber("Settings.FindThreads", Runtime.getRuntime().availableProcessors());
+      findPool = new ForkJoinPool(Math.max(1, threads));
+    }
+    return findPool;
+  }
+
   public List<Element> findAny(List<Picture> targets) {
+    return findAny(targets, false);
+  }
+
+  /**
+   * search each target like find() - the base is preprocessed only once for all targets
+   * (see prepare()) and the targets are searched in parallel
+   *
+   * @param targets the list of targets (null entries are allowed)
+   * @return a list with one entry per target: the match, an empty Element if not found
+   * or null for a null target
+   */
+  public List<Element> find(List<? extends Element> targets) {
+    return findParallel(targets, false);
+  }
+
+  /**
+   * search all targets in parallel
+   *
+   * @param targets the list of targets (null entries are allowed)
+   * @param best    stop as soon as one target is found with a score considered exact (see Target.getExactAs())
+   * @return a list with one entry per target: the match, an empty Element if not found/not searched
+   * or null for a null target
+   */
+  public List<Element> findAny(List<Picture> targets, final boolean best) {
+    return findParallel(targets, best);
+  }
+
+  private List<Element> findParallel(List<? extends Element> targets, final boolean best) {
     base.resetMatches();
-    int targetCount = 0;
     if (SX.isNull(targets)) {
       return null;
-    } else {
-      targetCount = targets.size();
     }
-    List<Element> matches = new ArrayList<>();
-    SubFindRun[] theSubs = new SubFindRun[targetCount];
-    int nobj = 0;
-    for (Element target : targets) {
-      matches.add(null);
-      theSubs[nobj] = null;
-      if (target != null) {
-        theSubs[nobj] = new SubFindRun(matches, nobj, target);
-        new Thread(theSubs[nobj]).start();
-      }
-      nobj++;
+    SharedBase sharedBase = acquireShared();
+    if (SX.isNull(sharedBase)) {
+      // not prepared: shared only by the targets of this call
+      sharedBase = new SharedBase();
     }
-    log.trace("findAnyCollect: waiting for (%d) SubFindRuns", targetCount);
-    nobj = 0;
-    boolean all = false;
-    while (!all) {
-      all = true;
-      int waitCount = targetCount;
-      for (SubFindRun sub : theSubs) {
-        if (sub.hasFinished()) {
-          waitCount -= 1;
+    return findParallelPrepared(targets, best, sharedBase);
+  }
+
+  /**
+   * @param sharedBase released, when all started sub-searches are finished
+   *                   (with best the sub-searches still running after an exact match are not waited for)
+   */
+  private List<Element> findParallelPrepared(List<? extends Element> targets, final boolean best,
+                                             final SharedBase sharedBase) {
+    int targetCount = targets.size();
+    List<CompletableFuture<Element>> subs = new ArrayList<>();
+    final CompletableFuture<Element> exactMatch = new CompletableFuture<>();
+    for (int nobj = 0; nobj < targetCount; nobj++) {
+      final Element target = targets.get(nobj);
+      final int subN = nobj;
+      if (SX.isNull(target)) {
+        subs.add(CompletableFuture.completedFuture((Element) null));
+        continue;
+      }
+      CompletableFuture<Element> sub = CompletableFuture.supplyAsync(new Supplier<Element>() {
+        @Override
+        public Element get() {
+          Element match = new Element();
+          if (best && exactMatch.isDone()) {
+            log.trace("findAny: %d skipped", subN);
+            return match;
+          }
+          FindResult findResult = doFind(target, FindType.ONE, sharedBase);
+          if (SX.isNotNull(findResult)) {
+            try {
+              if (findResult.hasNext()) {
+                match = findResult.next();
+              }
+            } finally {
+              findResult.release();
+            }
+          }
+          log.trace("findAny: %d finished", subN);
+          if (best && match.isMatch() && match.getScore() >= Target.getExactAs()) {
+            exactMatch.complete(match);
+          }
+          return match;
         }
-        all &= sub.hasFinished();
+      }, getFindPool());
+      subs.add(sub);
+    }
+    log.trace("findAny: waiting for (%d) sub-searches", targetCount);
+    CompletableFuture<Void> allSubs = CompletableFuture.allOf(subs.toArray(new CompletableFuture[0]));
+    // the subs are never cancelled: allSubs is complete only after the last sub-search has returned
+    allSubs.whenComplete(new BiConsumer<Void, Throwable>() {
+      @Override
+      public void accept(Void result, Throwable ex) {
+        sharedBase.release();
       }
-      SX.pause((waitCount * 10) / 1000);
+    });
+    try {
+      if (best) {
+        CompletableFuture.anyOf(allSubs, exactMatch).join();
+        if (exactMatch.isDone()) {
+          log.trace("findAny: exact match found - not waiting for the rest");
+        }
+      } else {
+        allSubs.join();
+      }
+    } catch (CompletionException | CancellationException ex) {
+      log.error("findAny: sub-search failed: %s", ex.getMessage());
     }
-    log.trace("findAnyCollect: SubFindRuns finished");
-    nobj = 0;
-    for (Element match : matches) {
+    log.trace("findAny: sub-searches finished");
+    List<Element> matches = new ArrayList<>();
+    int nobj = 0;
+    for (CompletableFuture<Element> sub : subs) {
+      Element match = SX.isNull(targets.get(nobj)) ? null : new Element();
+      if (sub.isDone() && !sub.isCompletedExceptionally()) {
+        match = sub.join();
+      }
       if (match != null) {
         match.setMatchIndex(nobj);
       }
+      matches.add(match);
       nobj++;
     }
     base.setLastMatches(matches);
     return matches;
   }
 
-  private class SubFindRun implements Runnable {
+  /**
+   * base preprocessing shared by the searches of several targets:
+   * the downsized levels (per factor) and the integral images (FFT matching) of the bases added
+   * (the base and its gray version) are made once on first use<br>
+   * counted users: given back to the MatPool, when the last user has released it
+   */
+  private static class SharedBase {
 
-    List<Element> matches;
-    boolean finished = false;
-    int subN;
-    Element target;
+    private int users = 1;
 
-    public SubFindRun(List<Element> matches, int pSubN, Element target) {
-      subN = pSubN;
-      this.matches = matches;
-      this.target = target;
+    private final Map<Mat, Map<Double, Mat>> levels = new IdentityHashMap<>();
+    private final Map<Mat, Mat[]> integrals = new IdentityHashMap<>();
+    private final Set<Mat> owned = Collections.newSetFromMap(new IdentityHashMap<Mat, Boolean>());
+
+    synchronized void add(Mat mBase) {
+      if (!levels.containsKey(mBase)) {
+        levels.put(mBase, new HashMap<Double, Mat>());
+      }
     }
 
-    @Override
-    public void run() {
-      Element match = new Element();
-      FindResult findResult = doFind(target, FindType.ONE);
-      if (SX.isNotNull(findResult) && findResult.hasNext()) {
-        match = findResult.next();
+    synchronized boolean isShared(Mat mat) {
+      return owned.contains(mat);
+    }
+
+    synchronized Mat getLevel(Mat mBase, double factor) {
+      Map<Double, Mat> baseLevels = levels.get(mBase);
+      if (SX.isNull(baseLevels)) {
+        baseLevels = new HashMap<>();
+        levels.put(mBase, baseLevels);
+      }
+      Mat mLevel = baseLevels.get(factor);
+      if (SX.isNull(mLevel)) {
+        Size sizeBase = new Size(mBase.cols() / factor, mBase.rows() / factor);
+        mLevel = MatPool.get((int) sizeBase.height, (int) sizeBase.width, mBase.type());
+        Imgproc.resize(mBase, mLevel, sizeBase, 0, 0, Imgproc.INTER_AREA);
+        baseLevels.put(factor, mLevel);
+        owned.add(mLevel);
+        levels.put(mLevel, new HashMap<Double, Mat>());
       }
-      matches.set(subN, match);
-      log.trace("SubFindRun: %d finished", subN);
-      hasFinished(true);
+      return mLevel;
     }
 
-    public boolean hasFinished() {
-      return hasFinished(false);
+    /**
+     * @return the integral images of a base known here (added or a level) or null
+     */
+    synchronized Mat[] getIntegrals(Mat mBase) {
+      if (!levels.containsKey(mBase)) {
+        return null;
+      }
+      Mat[] baseIntegrals = integrals.get(mBase);
+      if (SX.isNull(baseIntegrals)) {
+        baseIntegrals = FFTMatcher.getIntegrals(mBase);
+        integrals.put(mBase, baseIntegrals);
+      }
+      return baseIntegrals;
     }
 
-    public synchronized boolean hasFinished(boolean state) {
-      if (state) {
-        finished = true;
+    synchronized SharedBase acquire() {
+      users++;
+      return this;
+    }
+
+    synchronized void release() {
+      if (--users > 0) {
+        return;
+      }
+      for (Mat mLevel : owned) {
+        MatPool.release(mLevel);
+      }
+      for (Mat[] baseIntegrals : integrals.values()) {
+        baseIntegrals[0].release();
+        baseIntegrals[1].release();
       }
-      return finished;
+      owned.clear();
+      levels.clear();
+      integrals.clear();
     }
   }
   //</editor-fold>
@@ -492,11 +1494,10 @@ public class Finder {
   public static List<Element> detectChanges(Mat base, Mat mChanged) {
     int PIXEL_DIFF_THRESHOLD = 3;
     int IMAGE_DIFF_THRESHOLD = 5;
-    Mat mBaseGray = Element.getNewMat();
-    Mat mChangedGray = Element.getNewMat();
-    Mat mDiffAbs = Element.getNewMat();
-    Mat mDiffTresh = Element.getNewMat();
-    Mat mChanges = Element.getNewMat();
+    Mat mBaseGray = MatPool.get(base.rows(), base.cols(), gray);
+    Mat mChangedGray = MatPool.get(base.rows(), base.cols(), gray);
+    Mat mDiffAbs = MatPool.get(base.rows(), base.cols(), gray);
+    Mat mDiffTresh = MatPool.get(base.rows(), base.cols(), gray);
     List<Element> rectangles = new ArrayList<>();
 
     Imgproc.cvtColor(base, mBaseGray, toGray);
@@ -513,14 +1514,79 @@ public class Finder {
       Mat mHierarchy = Element.getNewMat();
       Imgproc.findContours(mDiffAbs, contours, mHierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
       rectangles = contoursToRectangle(contours);
-
-      Core.subtract(mDiffAbs, mDiffAbs, mChanges);
-      Imgproc.drawContours(mChanges, contours, -1, new Scalar(255));
       //logShow(mDiffAbs);
     }
+    MatPool.release(mBaseGray, mChangedGray, mDiffAbs, mDiffTresh);
     return rectangles;
   }
 
+  /**
+   * incremental version of detectChanges: only the regions of changed tiles are compared pixel by pixel
+   *
+   * @param base        the previous content
+   * @param baseHash    tile hashes of the previous content
+   * @param mChanged    the current content
+   * @param changedHash tile hashes of the current content
+   * @param minimumSize the minimum number of pixels (w * h) of a change to be reported
+   * @return the merged rectangles of change (relative to the content), empty if nothing changed
+   */
+  public static List<Element> detectChanges(Mat base, TileHash baseHash, Mat mChanged, TileHash changedHash,
+                                            int minimumSize) {
+    List<Element> rectangles = new ArrayList<>();
+    if (!changedHash.hasChanged(baseHash)) {
+      return rectangles;
+    }
+    if (!changedHash.isComparable(baseHash)) {
+      rectangles.add(new Element(0, 0, mChanged.cols(), mChanged.rows()));
+      return rectangles;
+    }
+    for (Element region : changedHash.getChangedRegions(baseHash)) {
+      Rect rect = new Rect(region.x, region.y, region.w, region.h);
+      for (Element change : detectChanges(base.submat(rect), mChanged.submat(rect))) {
+        change.translate(region.x, region.y);
+        rectangles.add(change);
+      }
+    }
+    rectangles = mergeRectangles(rectangles, 1);
+    List<Element> changes = new ArrayList<>();
+    for (Element change : rectangles) {
+      if (Math.max(1, change.w) * Math.max(1, change.h) >= minimumSize) {
+        changes.add(change);
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * rectangles overlapping or nearer than the given distance are replaced by their union
+   *
+   * @param rectangles the rectangles
+   * @param distance   max gap in pixels between rectangles to be merged
+   * @return the merged rectangles
+   */
+  public static List<Element> mergeRectangles(List<Element> rectangles, int distance) {
+    List<Element> merged = new ArrayList<>(rectangles);
+    boolean hasMerged = true;
+    while (hasMerged) {
+      hasMerged = false;
+      for (int n = 0; n < merged.size() && !hasMerged; n++) {
+        Element first = merged.get(n);
+        Rectangle grown = new Rectangle(first.x - distance, first.y - distance,
+                first.w + 2 * distance, first.h + 2 * distance);
+        for (int m = n + 1; m < merged.size(); m++) {
+          Element second = merged.get(m);
+          if (grown.intersects(new Rectangle(second.x, second.y, Math.max(1, second.w), Math.max(1, second.h)))) {
+            merged.set(n, first.union(second));
+            merged.remove(m);
+            hasMerged = true;
+            break;
+          }
+        }
+      }
+    }
+    return merged;
+  }
+
   public static List<MatOfPoint> getContours(Mat mBase, boolean external) {
     Mat mHierarchy = Element.getNewMat();
     List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
@@ -868,7 +1934,7 @@ public class Finder {
   }
 
   private static List<Element> runFindAny(String type, Object... args) {
-    PossibleMatch possibleMatch = new PossibleMatch(PossibleMatch.Type.ANY);
+    PossibleMatch possibleMatch = new PossibleMatch(BEST.equals(type) ? PossibleMatch.Type.BEST : PossibleMatch.Type.ANY);
     boolean shouldRepeat = true;
     List<Element> matches = new ArrayList<>();
     while (shouldRepeat) {
@@ -927,7 +1993,7 @@ public class Finder {
     Element target = new Element();
 
     public static enum Type {
-      FIND, WAIT, ALL, ANY, OBSERVE, DEVICE
+      FIND, WAIT, ALL, ANY, BEST, OBSERVE, DEVICE
     }
 
     Type type = Type.FIND;
@@ -1008,7 +2074,7 @@ public class Finder {
       log.trace(form, args);
       if (args.length > 0 && SX.isNotNull(args[0])) {
         args0 = args[0];
-        if (Type.ANY.equals(type)) {
+        if (Type.ANY.equals(type) || Type.BEST.equals(type)) {
           if (whatsGiven.getClass().isAssignableFrom(args0.getClass())) {
             isListWhat = true;
             what = new Element();
@@ -1078,8 +2144,9 @@ public class Finder {
             if (SX.isNull(where)) {
               where = Do.on();
             }
+            long captureTime = new Date().getTime();
             if (where.isOnScreen()) {
-              where.capture();
+              where.refresh();
             }
             finder = new Finder(where);
             where.setLastTarget(null);
@@ -1090,13 +2157,23 @@ public class Finder {
                 waitTime = (int) (1000 * Math.max(where.getWaitForMatch(), what.getWaitForThis()));
               }
               endTime = startTime + waitTime;
+              if (where.isOnScreen() && !isListWhat) {
+                if (where.getDevice().isDamageTracked()) {
+                  baseTime = captureTime;
+                } else {
+                  baseHash = new TileHash(where.getContentBGR());
+                }
+              }
               if (Type.FIND.equals(type) || Type.WAIT.equals(type)) {
                 lastRepeatTime = new Date().getTime();
                 finder.find(what);
+                lastFound = where.hasMatch() ? where.getLastMatch() : null;
               } else if (Type.ALL.equals(type)) {
                 finder.findAll(what);
               } else if (Type.ANY.equals(type)) {
                 finder.findAny(whats);
+              } else if (Type.BEST.equals(type)) {
+                finder.findAny(whats, true);
               }
             }
           } else {
@@ -1121,12 +2198,42 @@ public class Finder {
       log.trace("EvaluateTarget: repeat: delayed: %d", repeatDelay);
       lastRepeatTime = new Date().getTime();
       if (new Date().getTime() < endTime) {
-        if (where.isOnScreen()) {
-          where.capture();
+        List<Element> changedRegions = null;
+        IDevice device = where.getDevice();
+        if (where.isOnScreen() && device.isDamageTracked() && baseTime > 0) {
+          // the device tells what changed (e.g. a VNC server): captured and searched again only after a relevant change
+          long since = baseTime;
+          changedRegions = device.getDamage(where, since);
+          if (shouldFindAgain(changedRegions)) {
+            baseTime = new Date().getTime();
+            where.refresh();
+            finder.refreshBase();
+            // including what changed until the capture
+            changedRegions = device.getDamage(where, since);
+          }
+        } else if (where.isOnScreen()) {
+          where.refresh();
           finder.refreshBase();
+          TileHash hash = new TileHash(where.getContentBGR());
+          if (hash.isComparable(baseHash)) {
+            changedRegions = hash.getChangedRegions(baseHash);
+          }
+          baseHash = hash;
         }
-        if (Type.FIND.equals(type) || Type.WAIT.equals(type)) {
-          finder.find(what);
+        if (SX.isNotNull(changedRegions) && !shouldFindAgain(changedRegions)) {
+          log.trace("EvaluateTarget: repeat: no relevant change - find skipped");
+          if ((Type.FIND.equals(type) || Type.WAIT.equals(type)) && SX.isNotNull(lastFound)) {
+            // still valid - the caller might have taken it from where (e.g. waitVanish)
+            where.setLastMatch(lastFound);
+          }
+        } else if (Type.FIND.equals(type) || Type.WAIT.equals(type)) {
+          if (SX.isNotNull(changedRegions) && SX.isNull(lastFound) && isSmallChange(changedRegions)) {
+            // not there before: it can only have appeared in the changed regions
+            finder.find(what, changedRegions);
+          } else {
+            finder.find(what);
+          }
+          lastFound = where.hasMatch() ? where.getLastMatch() : null;
         } else if (Type.ALL.equals(type)) {
           finder.findAll(what);
         }
@@ -1138,6 +2245,44 @@ public class Finder {
       }
     }
 
+    TileHash baseHash = null;
+    // the match of the last find (FIND, WAIT) - kept here, since the caller may reset where's last match
+    Element lastFound = null;
+    // device tracking the damage (e.g. VNC): time (msec) before the capture of the current base (0: not used)
+    long baseTime = 0;
+
+    /**
+     * with unchanged tiles the result of the last find is still valid:
+     * nothing to do if no tile changed or an existing match is not touched by a change
+     */
+    private boolean shouldFindAgain(List<Element> changedRegions) {
+      if (changedRegions.isEmpty()) {
+        return false;
+      }
+      if ((Type.FIND.equals(type) || Type.WAIT.equals(type)) && SX.isNotNull(lastFound)) {
+        Element match = lastFound;
+        Rectangle rMatch = new Rectangle(match.x, match.y, match.w, match.h);
+        for (Element region : changedRegions) {
+          if (rMatch.intersects(new Rectangle(region.x, region.y, region.w, region.h))) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * searching the changed regions only is worth it, if they cover less than half of the base
+     */
+    private boolean isSmallChange(List<Element> changedRegions) {
+      long changedArea = 0;
+      for (Element region : changedRegions) {
+        changedArea += (long) (region.w + what.w) * (region.h + what.h);
+      }
+      return changedArea < (long) where.w * where.h / 2;
+    }
+
     public boolean shouldWait() {
       if (waitTime < 0) {
         return false;
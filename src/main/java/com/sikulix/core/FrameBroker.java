@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import com.sikulix.api.Element;
+import org.opencv.core.Mat;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * captures an observed Element once per scan cycle and hands the frame to all subscribers<br>
+ * only the latest frame is kept: a subscriber, that is slower than the scan rate, skips the frames it missed
+ */
+public class FrameBroker {
+
+  private static SXLog log = SX.getSXLog("SX.FrameBroker");
+
+  //<editor-fold desc="housekeeping">
+  private static final Map<Element, FrameBroker> brokers =
+          Collections.synchronizedMap(new IdentityHashMap<Element, FrameBroker>());
+
+  private final Element where;
+  private int subscribers = 0;
+  private boolean running = false;
+  private Frame latest = null;
+  private long frameCount = 0;
+  private long droppedCount = 0;
+
+  private FrameBroker(Element where) {
+    this.where = where;
+  }
+
+  /**
+   * an immutable captured frame: the content must not be changed by the subscribers<br>
+   * a subscriber, that needs the content beyond the next frame, has to hold it in an Element (setContent)
+   */
+  public static class Frame {
+    private final Element frame;
+    private final long number;
+    private final long time;
+
+    private Frame(Element frame, long number) {
+      this.frame = frame;
+      this.number = number;
+      time = new Date().getTime();
+    }
+
+    public Mat getContent() {
+      return frame.getContentBGR();
+    }
+
+    public long getNumber() {
+      return number;
+    }
+
+    public long getTime() {
+      return time;
+    }
+  }
+
+  public String toString() {
+    return String.format("FrameBroker: %s (subscribers: %d frames: %d dropped: %d)",
+            where, subscribers, frameCount, droppedCount);
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="subscribe">
+
+  /**
+   * subscribe to the frames of the given Element (starts capturing with the first subscriber)
+   *
+   * @param where the observed Element
+   * @return the broker for this Element
+   */
+  public static FrameBroker subscribe(Element where) {
+    // lock order: brokers, then the broker - a broker without subscribers is no longer in brokers
+    synchronized (brokers) {
+      FrameBroker broker = brokers.get(where);
+      if (SX.isNull(broker)) {
+        broker = new FrameBroker(where);
+        brokers.put(where, broker);
+      }
+      broker.addSubscriber();
+      return broker;
+    }
+  }
+
+  private synchronized void addSubscriber() {
+    subscribers++;
+    if (!running) {
+      running = true;
+      Thread capturer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          captureLoop();
+        }
+      });
+      capturer.setDaemon(true);
+      capturer.start();
+    }
+  }
+
+  /**
+   * capturing stops with the last subscriber gone (a later subscribe() gets a new broker)
+   */
+  public void unsubscribe() {
+    synchronized (brokers) {
+      synchronized (this) {
+        if (subscribers > 0) {
+          subscribers--;
+        }
+        if (subscribers == 0 && brokers.get(where) == this) {
+          brokers.remove(where);
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  public synchronized int getSubscribers() {
+    return subscribers;
+  }
+
+  public synchronized long getFrameCount() {
+    return frameCount;
+  }
+
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="frames">
+
+  /**
+   * waits for a frame newer than the given one
+   *
+   * @param lastNumber the number of the frame the caller has seen last (-1 for none)
+   * @return the latest frame or null, if the broker has no subscribers anymore
+   */
+  public Frame next(long lastNumber) {
+    return next(lastNumber, null);
+  }
+
+  /**
+   * waits for a frame newer than the given one and lets the holder take over its content
+   * (the content stays valid as long as the holder has it, even if the broker moves on)
+   *
+   * @param lastNumber the number of the frame the caller has seen last (-1 for none)
+   * @param holder     Element to get the frame's content (might be null)
+   * @return the latest frame or null, if the broker has no subscribers anymore
+   */
+  public synchronized Frame next(long lastNumber, Element holder) {
+    while (subscribers > 0 && (SX.isNull(latest) || latest.getNumber() <= lastNumber)) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        return null;
+      }
+    }
+    if (subscribers == 0) {
+      return null;
+    }
+    if (lastNumber > -1 && latest.getNumber() > lastNumber + 1) {
+      droppedCount += latest.getNumber() - lastNumber - 1;
+    }
+    if (SX.isNotNull(holder)) {
+      holder.setContent(latest.getContent());
+    }
+    return latest;
+  }
+
+  private long getScanPause() {
+    double scanRate = where.getObserveScanRate();
+    if (scanRate <= 0) {
+      scanRate = SX.getOptionNumber("Settings.ObserveScanRate", 3);
+    }
+    return (long) (1000 / scanRate);
+  }
+
+  private Element capture() {
+    Element frameWhere = new Element(where);
+    if (where.isOnScreen()) {
+      frameWhere.refresh();
+    } else {
+      frameWhere.setContent(where.getContentBGR());
+    }
+    return frameWhere;
+  }
+
+  private void captureLoop() {
+    log.trace("start: %s", where);
+    while (true) {
+      synchronized (this) {
+        if (subscribers == 0) {
+          running = false;
+          if (SX.isNotNull(latest)) {
+            latest.frame.release();
+          }
+          latest = null;
+          break;
+        }
+      }
+      long start = new Date().getTime();
+      Element frame = capture();
+      synchronized (this) {
+        if (frame.hasContent()) {
+          // subscribers still working on the replaced frame hold its content themselves
+          if (SX.isNotNull(latest)) {
+            latest.frame.release();
+          }
+          latest = new Frame(frame, frameCount++);
+          notifyAll();
+        }
+      }
+      long pause = start + getScanPause() - new Date().getTime();
+      if (pause > 0) {
+        try {
+          Thread.sleep(pause);
+        } catch (InterruptedException e) {
+        }
+      }
+    }
+    log.trace("stop: %s", this);
+  }
+  //</editor-fold>
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import com.sikulix.api.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Date;
+
+/**
+ * where a target was found the last time - kept on disk (memory mapped file lastseen.idx in the store folder),
+ * so it survives a restart of the JVM and new Pictures made from the same image<br>
+ * the key is the target's content hash together with the geometry of the searched base,
+ * the value is the match (relative to the base), its score and the scale it was found at<br>
+ * a fixed size hash table: when the probed slots are full, the oldest entry is replaced<br>
+ * the file may be shared by more than one JVM: each access locks the entry region of the file,
+ * an entry is written payload first and key last, so a reader never takes the payload of another target<br>
+ * off by default (Settings.LastSeenIndex)
+ */
+public class LastSeenIndex {
+
+  private static final SXLog log = SX.getSXLog("SX.LastSeenIndex");
+
+  private static final String fileName = "lastseen.idx";
+  private static final int MAGIC = 0x53584c53; // SXLS
+  private static final int VERSION = 1;
+  private static final int HEADER = 16;
+  // key(long) x, y, w, h(int) score, scale(float) time(long)
+  private static final int ENTRY = 40;
+  private static final int PROBES = 8;
+
+  private static File fIndex = null;
+  private static RandomAccessFile file = null;
+  private static FileChannel channel = null;
+  private static MappedByteBuffer index = null;
+  private static int slots = 0;
+  private static boolean failed = false;
+
+  private LastSeenIndex() {
+  }
+
+  public static class Seen {
+    public final int x;
+    public final int y;
+    public final int w;
+    public final int h;
+    public final double score;
+    public final double scale;
+
+    private Seen(int x, int y, int w, int h, double score, double scale) {
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+      this.score = score;
+      this.scale = scale;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("[%d,%d %dx%d]%%%.2f(%.2f)", x, y, w, h, score * 100, scale);
+    }
+  }
+
+  public static boolean isActive() {
+    return SX.isOption("Settings.LastSeenIndex", false) && !failed;
+  }
+
+  /**
+   * use another index file (e.g. one per project) - the current one is closed
+   *
+   * @param fNewIndex the file or null for lastseen.idx in the store folder
+   */
+  public static synchronized void use(File fNewIndex) {
+    close();
+    fIndex = fNewIndex;
+    failed = false;
+  }
+
+  /**
+   * release the mapping and the file
+   */
+  public static synchronized void close() {
+    if (SX.isNotNull(file)) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        log.error("close: %s (%s)", fIndex, e.getMessage());
+      }
+    }
+    file = null;
+    channel = null;
+    index = null;
+    slots = 0;
+  }
+
+  private static boolean open() {
+    if (SX.isNotNull(index)) {
+      return true;
+    }
+    if (failed) {
+      return false;
+    }
+    if (SX.isNull(fIndex)) {
+      fIndex = Content.asFile(SX.getSXSTORE(), fileName);
+    }
+    int wantedSlots = Math.max(64, (int) SX.getOptionNumber("Settings.LastSeenIndexSize", 4096));
+    try {
+      file = new RandomAccessFile(fIndex, "rw");
+      channel = file.getChannel();
+      try (FileLock lock = channel.lock()) {
+        boolean valid = false;
+        if (file.length() >= HEADER) {
+          file.seek(0);
+          int magic = file.readInt();
+          int version = file.readInt();
+          int fileSlots = file.readInt();
+          valid = magic == MAGIC && version == VERSION && file.length() == HEADER + ((long) fileSlots) * ENTRY;
+          if (valid) {
+            wantedSlots = fileSlots;
+          }
+        }
+        long size = HEADER + ((long) wantedSlots) * ENTRY;
+        if (!valid) {
+          file.setLength(0);
+          file.setLength(size);
+        }
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        slots = wantedSlots;
+        if (!valid) {
+          index.putInt(0, MAGIC);
+          index.putInt(4, VERSION);
+          index.putInt(8, slots);
+        }
+      }
+      log.trace("open: %s (%d entries)", fIndex, slots);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      log.error("open: %s not possible (%s) - last seen not kept", fIndex, e.getMessage());
+      close();
+      failed = true;
+      return false;
+    }
+  }
+
+  private static FileLock lock(boolean shared) {
+    try {
+      return channel.lock(HEADER, ((long) slots) * ENTRY, shared);
+    } catch (IOException | RuntimeException e) {
+      log.error("lock: %s not possible (%s) - last seen not kept", fIndex, e.getMessage());
+      close();
+      failed = true;
+      return null;
+    }
+  }
+
+  private static void unlock(FileLock lock) {
+    try {
+      lock.release();
+    } catch (IOException e) {
+      log.error("unlock: %s (%s)", fIndex, e.getMessage());
+    }
+  }
+
+  static long getKey(Element target, Element base) {
+    long key = target.getContentHash();
+    for (int value : new int[]{base.x, base.y, base.w, base.h}) {
+      key = (key ^ value) * 0x100000001b3L;
+    }
+    return key == 0 ? 1 : key;
+  }
+
+  private static int getSlot(long key, int probe) {
+    return (int) (((key >>> 1) + probe) % slots);
+  }
+
+  private static int getOffset(int slot) {
+    return HEADER + slot * ENTRY;
+  }
+
+  /**
+   * @param target what was searched
+   * @param base   where it was searched
+   * @return where it was found the last time or null
+   */
+  public static synchronized Seen get(Element target, Element base) {
+    if (!target.hasContent() || !open()) {
+      return null;
+    }
+    long key = getKey(target, base);
+    FileLock lock = lock(true);
+    if (SX.isNull(lock)) {
+      return null;
+    }
+    try {
+      for (int probe = 0; probe < PROBES; probe++) {
+        int offset = getOffset(getSlot(key, probe));
+        long slotKey = index.getLong(offset);
+        if (slotKey == 0) {
+          return null;
+        }
+        if (slotKey == key) {
+          return new Seen(index.getInt(offset + 8), index.getInt(offset + 12),
+                  index.getInt(offset + 16), index.getInt(offset + 20),
+                  index.getFloat(offset + 24), index.getFloat(offset + 28));
+        }
+      }
+      return null;
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  /**
+   * remember a match
+   *
+   * @param target what was searched
+   * @param base   where it was searched
+   * @param match  where it was found (relative to the base)
+   */
+  public static synchronized void put(Element target, Element base, Element match) {
+    if (!target.hasContent() || target.w < 1 || !open()) {
+      return;
+    }
+    long key = getKey(target, base);
+    FileLock lock = lock(false);
+    if (SX.isNull(lock)) {
+      return;
+    }
+    try {
+      int offset = -1;
+      long oldest = Long.MAX_VALUE;
+      for (int probe = 0; probe < PROBES; probe++) {
+        int probeOffset = getOffset(getSlot(key, probe));
+        long slotKey = index.getLong(probeOffset);
+        if (slotKey == 0 || slotKey == key) {
+          offset = probeOffset;
+          break;
+        }
+        long time = index.getLong(probeOffset + 32);
+        if (time < oldest) {
+          oldest = time;
+          offset = probeOffset;
+        }
+      }
+      if (index.getLong(offset) != key) {
+        index.putLong(offset, 0);
+      }
+      index.putInt(offset + 8, match.x);
+      index.putInt(offset + 12, match.y);
+      index.putInt(offset + 16, match.w);
+      index.putInt(offset + 20, match.h);
+      index.putFloat(offset + 24, (float) match.getScore());
+      index.putFloat(offset + 28, (float) (((double) match.w) / target.w));
+      index.putLong(offset + 32, new Date().getTime());
+      index.putLong(offset, key);
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  /**
+   * forget all entries
+   */
+  public static synchronized void clear() {
+    if (!open()) {
+      return;
+    }
+    FileLock lock = lock(false);
+    if (SX.isNull(lock)) {
+      return;
+    }
+    try {
+      for (int offset = HEADER; offset < HEADER + slots * ENTRY; offset += 8) {
+        index.putLong(offset, 0);
+      }
+    } finally {
+      unlock(lock);
+    }
+  }
+}
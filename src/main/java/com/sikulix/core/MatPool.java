@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import com.sikulix.api.Element;
+import org.opencv.core.Mat;
+
+import java.util.*;
+
+/**
+ * pool of native Mats keyed by size and type for the intermediate results of Finder<br>
+ * a Mat taken with get() must be given back with release() when no longer needed:
+ * it is then either kept for reuse or its native memory is freed at once (not with the GC later)<br>
+ * Mats handed out are only weakly referenced: one never given back is still freed by the GC<br>
+ * the pool is bounded by a byte budget (Settings.MatPoolSize in MB)
+ */
+public class MatPool {
+
+  private static SXLog log = SX.getSXLog("SX.MatPool");
+
+  //<editor-fold desc="housekeeping">
+  private static MatPool instance = null;
+
+  private long maxBytes = (long) (SX.getOptionNumber("Settings.MatPoolSize", 64) * 1024 * 1024);
+  private long pooledBytes = 0;
+  private long allocations = 0;
+  private long reuses = 0;
+  private long frees = 0;
+
+  private final Map<String, Deque<Mat>> pooled = new HashMap<>();
+  // Mat does not override equals/hashCode: identity, entries vanish with Mats lost without release()
+  private final Map<Mat, Long> borrowed = new WeakHashMap<>();
+
+  private MatPool() {
+  }
+
+  private static synchronized MatPool get() {
+    if (SX.isNull(instance)) {
+      instance = new MatPool();
+    }
+    return instance;
+  }
+
+  private static String getKey(int rows, int cols, int type) {
+    return rows + "x" + cols + "x" + type;
+  }
+
+  private static long getBytes(Mat mat) {
+    return mat.total() * mat.elemSize();
+  }
+
+  private long getBorrowedBytes() {
+    long bytes = 0;
+    for (Long matBytes : borrowed.values()) {
+      bytes += matBytes;
+    }
+    return bytes;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="configure, statistics">
+
+  /**
+   * @param megaBytes the maximum size of all Mats kept for reuse (0: every released Mat is freed at once)
+   */
+  public static void setSize(double megaBytes) {
+    MatPool pool = get();
+    synchronized (pool) {
+      pool.maxBytes = (long) (megaBytes * 1024 * 1024);
+      pool.trim();
+    }
+  }
+
+  /**
+   * @return bytes of native memory handed out and not yet released (nor collected by the GC)
+   */
+  public static long getOutstandingBytes() {
+    MatPool pool = get();
+    synchronized (pool) {
+      return pool.getBorrowedBytes();
+    }
+  }
+
+  /**
+   * @return bytes of native memory kept for reuse
+   */
+  public static long getPooledBytes() {
+    MatPool pool = get();
+    synchronized (pool) {
+      return pool.pooledBytes;
+    }
+  }
+
+  /**
+   * @return allocations, reuses, frees, outstanding Mats, outstanding bytes, pooled bytes
+   */
+  public static long[] getStatistics() {
+    MatPool pool = get();
+    synchronized (pool) {
+      return new long[]{pool.allocations, pool.reuses, pool.frees,
+              pool.borrowed.size(), pool.getBorrowedBytes(), pool.pooledBytes};
+    }
+  }
+
+  public static String getStatisticsString() {
+    long[] stats = getStatistics();
+    return String.format("MatPool: allocated: %d reused: %d freed: %d outstanding: %d (%.1f MB) pooled: %.1f MB",
+            stats[0], stats[1], stats[2], stats[3], stats[4] / (1024.0 * 1024.0), stats[5] / (1024.0 * 1024.0));
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="get, release">
+
+  /**
+   * a Mat of the given size and type (content undefined) - give it back with release()
+   *
+   * @param rows rows
+   * @param cols columns
+   * @param type CvType
+   * @return the Mat
+   */
+  public static Mat get(int rows, int cols, int type) {
+    MatPool pool = get();
+    Mat mat = null;
+    synchronized (pool) {
+      Deque<Mat> mats = pool.pooled.get(getKey(rows, cols, type));
+      if (SX.isNotNull(mats) && !mats.isEmpty()) {
+        mat = mats.pop();
+        pool.pooledBytes -= getBytes(mat);
+        pool.reuses++;
+      }
+    }
+    if (SX.isNull(mat)) {
+      mat = Element.getNewMat();
+      mat.create(rows, cols, type);
+      synchronized (pool) {
+        pool.allocations++;
+      }
+    }
+    long bytes = getBytes(mat);
+    synchronized (pool) {
+      pool.borrowed.put(mat, bytes);
+    }
+    return mat;
+  }
+
+  /**
+   * give back Mats taken with get() (others and null are ignored)<br>
+   * the Mats must not be used by the caller afterwards
+   *
+   * @param mats the Mats
+   */
+  public static void release(Mat... mats) {
+    MatPool pool = get();
+    for (Mat mat : mats) {
+      if (SX.isNull(mat)) {
+        continue;
+      }
+      synchronized (pool) {
+        if (SX.isNull(pool.borrowed.remove(mat))) {
+          continue;
+        }
+        long matBytes = getBytes(mat);
+        if (matBytes > 0 && pool.pooledBytes + matBytes <= pool.maxBytes) {
+          String key = getKey(mat.rows(), mat.cols(), mat.type());
+          Deque<Mat> pooledMats = pool.pooled.get(key);
+          if (SX.isNull(pooledMats)) {
+            pooledMats = new ArrayDeque<>();
+            pool.pooled.put(key, pooledMats);
+          }
+          pooledMats.push(mat);
+          pool.pooledBytes += matBytes;
+          continue;
+        }
+        pool.frees++;
+      }
+      mat.release();
+    }
+  }
+
+  /**
+   * frees all pooled Mats (Mats handed out are not affected)
+   */
+  public static void clear() {
+    MatPool pool = get();
+    synchronized (pool) {
+      long maxBytes = pool.maxBytes;
+      pool.maxBytes = 0;
+      pool.trim();
+      pool.maxBytes = maxBytes;
+    }
+  }
+
+  private void trim() {
+    Iterator<Deque<Mat>> iterator = pooled.values().iterator();
+    while (pooledBytes > maxBytes && iterator.hasNext()) {
+      Deque<Mat> mats = iterator.next();
+      while (pooledBytes > maxBytes && !mats.isEmpty()) {
+        Mat mat = mats.pop();
+        pooledBytes -= getBytes(mat);
+        mat.release();
+        frees++;
+      }
+      if (mats.isEmpty()) {
+        iterator.remove();
+      }
+    }
+    log.trace("trim: pooled: %d bytes", pooledBytes);
+  }
+  //</editor-fold>
+}
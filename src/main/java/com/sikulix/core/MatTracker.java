@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import org.opencv.core.Mat;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * counts the Elements holding a Mat as content or mask<br>
+ * a Mat is released (native memory freed at once) when the last Element gives it up<br>
+ * in debug mode (Settings.TrackMats or global log level DEBUG) the place,
+ * where a Mat was taken over first, is recorded to report Mats living too long (leaks)<br>
+ * the Mats are only weakly referenced: the Mat of an Element dropped without release()
+ * is still collected and its native memory freed by the garbage collector
+ */
+public class MatTracker {
+
+  private static SXLog log = SX.getSXLog("SX.MatTracker");
+
+  //<editor-fold desc="housekeeping">
+  private static final Map<MatKey, Reference> references = new HashMap<>();
+  private static final ReferenceQueue<Mat> collected = new ReferenceQueue<>();
+  private static long releasedCount = 0;
+  private static long releasedBytes = 0;
+  private static long collectedCount = 0;
+
+  /**
+   * the identity of a Mat, that does not keep it reachable
+   */
+  private static class MatKey extends WeakReference<Mat> {
+    private final int hash;
+
+    MatKey(Mat mat, ReferenceQueue<Mat> queue) {
+      super(mat, queue);
+      hash = System.identityHashCode(mat);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof MatKey)) {
+        return false;
+      }
+      Mat mat = get();
+      return SX.isNotNull(mat) && mat == ((MatKey) other).get();
+    }
+  }
+
+  // forget the Mats collected meanwhile (to be called holding references)
+  private static void expunge() {
+    java.lang.ref.Reference<? extends Mat> key;
+    while (SX.isNotNull(key = collected.poll())) {
+      if (SX.isNotNull(references.remove(key))) {
+        collectedCount++;
+      }
+    }
+  }
+
+  private static class Reference {
+    int count = 0;
+    long bytes;
+    long time = new Date().getTime();
+    Throwable origin = null;
+
+    Reference(Mat mat) {
+      bytes = mat.total() * mat.elemSize();
+      if (isTracking()) {
+        origin = new Throwable("taken over at");
+      }
+    }
+  }
+
+  private MatTracker() {
+  }
+
+  public static boolean isTracking() {
+    return SX.isOption("Settings.TrackMats") || log.isGlobalLevel(SXLog.DEBUG);
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="retain, release">
+
+  /**
+   * an Element takes over the Mat
+   *
+   * @param mat the Mat (null is ignored)
+   */
+  public static void retain(Mat mat) {
+    if (SX.isNull(mat)) {
+      return;
+    }
+    synchronized (references) {
+      expunge();
+      MatKey key = new MatKey(mat, collected);
+      Reference reference = references.get(key);
+      if (SX.isNull(reference)) {
+        reference = new Reference(mat);
+        references.put(key, reference);
+      }
+      reference.count++;
+    }
+  }
+
+  /**
+   * an Element gives up the Mat: it is released if no other Element holds it<br>
+   * Mats never taken over by an Element (retain) are not touched
+   *
+   * @param mat the Mat (null is ignored)
+   */
+  public static void release(Mat mat) {
+    if (SX.isNull(mat)) {
+      return;
+    }
+    synchronized (references) {
+      expunge();
+      MatKey key = new MatKey(mat, null);
+      Reference reference = references.get(key);
+      if (SX.isNull(reference) || --reference.count > 0) {
+        return;
+      }
+      references.remove(key);
+      releasedCount++;
+      releasedBytes += reference.bytes;
+    }
+    mat.release();
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="statistics, leaks">
+
+  /**
+   * @return number of Mats currently held by Elements
+   */
+  public static int getLiveCount() {
+    synchronized (references) {
+      expunge();
+      return references.size();
+    }
+  }
+
+  /**
+   * @return native bytes of the Mats currently held by Elements
+   */
+  public static long getLiveBytes() {
+    long bytes = 0;
+    synchronized (references) {
+      expunge();
+      for (Reference reference : references.values()) {
+        bytes += reference.bytes;
+      }
+    }
+    return bytes;
+  }
+
+  public static String getStatisticsString() {
+    long liveBytes = getLiveBytes();
+    synchronized (references) {
+      return String.format("MatTracker: live: %d (%.1f MB) released: %d (%.1f MB) collected: %d",
+              references.size(), liveBytes / (1024.0 * 1024.0), releasedCount, releasedBytes / (1024.0 * 1024.0),
+              collectedCount);
+    }
+  }
+
+  /**
+   * logs (error) the Mats held longer than the given time - with the place of take over in debug mode
+   *
+   * @param olderThan milliseconds
+   * @return number of Mats reported
+   */
+  public static int logLeaks(long olderThan) {
+    long limit = new Date().getTime() - olderThan;
+    List<Reference> leaks = new ArrayList<>();
+    synchronized (references) {
+      expunge();
+      for (Reference reference : references.values()) {
+        if (reference.time < limit) {
+          leaks.add(reference);
+        }
+      }
+    }
+    for (Reference leak : leaks) {
+      log.error("leak?: %d bytes held by %d since %d msec", leak.bytes, leak.count,
+              new Date().getTime() - leak.time);
+      if (SX.isNotNull(leak.origin)) {
+        for (StackTraceElement element : leak.origin.getStackTrace()) {
+          log.error("    at %s", element);
+        }
+      }
+    }
+    return leaks.size();
+  }
+  //</editor-fold>
+}
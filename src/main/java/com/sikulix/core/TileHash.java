@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.core;
+
+import com.sikulix.api.Element;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * checksums of the square tiles (default 64x64) of an image's content<br>
+ * comparing the tile hashes of two images of the same size is much cheaper than comparing the pixels
+ * and tells, which parts of the image might have changed
+ */
+public class TileHash {
+
+  public static final int TILE_SIZE = 64;
+
+  private final int tileSize;
+  private final int width;
+  private final int height;
+  private final int type;
+  private final int cols;
+  private final int rows;
+  private final long[] hashes;
+
+  // reused per thread as long as the size does not change (repeated captures of the same region)
+  private static ThreadLocal<byte[]> tileHashBuffer = new ThreadLocal<>();
+
+  public TileHash(Mat content) {
+    this(content, TILE_SIZE);
+  }
+
+  public TileHash(Mat content, int tileSize) {
+    this.tileSize = Math.max(8, tileSize);
+    width = content.cols();
+    height = content.rows();
+    type = content.type();
+    cols = (width + this.tileSize - 1) / this.tileSize;
+    rows = (height + this.tileSize - 1) / this.tileSize;
+    hashes = new long[cols * rows];
+    if (!content.empty()) {
+      makeHashes(content);
+    }
+  }
+
+  private void makeHashes(Mat content) {
+    if (!content.isContinuous()) {
+      content = content.clone();
+    }
+    int pixelBytes = (int) content.elemSize();
+    int size = width * height * pixelBytes;
+    byte[] bytes = tileHashBuffer.get();
+    if (SX.isNull(bytes) || bytes.length != size) {
+      bytes = new byte[size];
+      tileHashBuffer.set(bytes);
+    }
+    content.get(0, 0, bytes);
+    int rowBytes = width * pixelBytes;
+    int tileBytes = tileSize * pixelBytes;
+    for (int y = 0; y < height; y++) {
+      int tileRow = (y / tileSize) * cols;
+      int rowStart = y * rowBytes;
+      for (int tileCol = 0; tileCol < cols; tileCol++) {
+        int start = rowStart + tileCol * tileBytes;
+        int end = Math.min(start + tileBytes, rowStart + rowBytes);
+        long hash = hashes[tileRow + tileCol];
+        for (int n = start; n < end; n++) {
+          hash = (hash ^ (bytes[n] & 0xff)) * 0x100000001b3L;
+        }
+        hashes[tileRow + tileCol] = hash;
+      }
+    }
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * @param other tile hashes of another image
+   * @return true if both images have the same size and type and are split into the same tiles
+   */
+  public boolean isComparable(TileHash other) {
+    return SX.isNotNull(other) && other.tileSize == tileSize && other.width == width && other.height == height
+            && other.type == type;
+  }
+
+  /**
+   * @param previous tile hashes of an earlier content
+   * @return true if not comparable or at least one tile differs
+   */
+  public boolean hasChanged(TileHash previous) {
+    if (!isComparable(previous)) {
+      return true;
+    }
+    for (int n = 0; n < hashes.length; n++) {
+      if (hashes[n] != previous.hashes[n]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * the changed tiles are combined to regions of touching tiles (the bounding box of each group)
+   *
+   * @param previous tile hashes of an earlier content
+   * @return the regions (relative to the content), one region with the whole content if not comparable
+   */
+  public List<Element> getChangedRegions(TileHash previous) {
+    List<Element> regions = new ArrayList<>();
+    if (!isComparable(previous)) {
+      regions.add(new Element(0, 0, width, height));
+      return regions;
+    }
+    boolean[] changed = new boolean[hashes.length];
+    for (int n = 0; n < hashes.length; n++) {
+      changed[n] = hashes[n] != previous.hashes[n];
+    }
+    int[] stack = new int[hashes.length];
+    for (int n = 0; n < hashes.length; n++) {
+      if (!changed[n]) {
+        continue;
+      }
+      int minCol = cols, minRow = rows, maxCol = -1, maxRow = -1;
+      int top = 0;
+      stack[top++] = n;
+      changed[n] = false;
+      while (top > 0) {
+        int tile = stack[--top];
+        int col = tile % cols;
+        int row = tile / cols;
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+          for (int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+            int neighbour = r * cols + c;
+            if (changed[neighbour]) {
+              changed[neighbour] = false;
+              stack[top++] = neighbour;
+            }
+          }
+        }
+      }
+      int x = minCol * tileSize;
+      int y = minRow * tileSize;
+      regions.add(new Element(x, y,
+              Math.min(width, (maxCol + 1) * tileSize) - x, Math.min(height, (maxRow + 1) * tileSize) - y));
+    }
+    return regions;
+  }
+}
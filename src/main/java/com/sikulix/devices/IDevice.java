@@ -10,6 +10,7 @@ import com.sikulix.core.Content;
 import com.sikulix.core.SX;
 
 import java.awt.*;
+import java.util.List;
 
 public abstract class IDevice {
 
@@ -104,4 +105,21 @@ public abstract class IDevice {
   public abstract Picture capture(Object... args);
 
   public abstract Picture userCapture(Object... args);
+
+  /**
+   * @return true, if the device itself knows what changed on the screen (see getDamage()),
+   * otherwise the wait loops compare the captures
+   */
+  public boolean isDamageTracked() {
+    return false;
+  }
+
+  /**
+   * @param what  the Element
+   * @param since time (msec)
+   * @return the changed parts of the Element since the time (relative to the Element) or null if not tracked
+   */
+  public List<Element> getDamage(Element what, long since) {
+    return null;
+  }
 }
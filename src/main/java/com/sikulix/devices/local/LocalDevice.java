@@ -18,6 +18,8 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Date;
+import org.opencv.core.Mat;
 
 public class LocalDevice extends IDevice {
 
@@ -51,12 +53,16 @@ public class LocalDevice extends IDevice {
       if (SX.isOption("SX.withHook", false)) {
         hook = (HookDevice) new HookDevice().start();
       }
+      if (SX.isOption("Settings.CaptureStream", false)) {
+        startStreaming(SX.getOptionNumber("Settings.CaptureStreamFPS", 10));
+      }
     }
     return this;
   }
 
   @Override
   public void stop() {
+    stopStreaming();
     SX.setSXLOCALDEVICE(null);
   }
 
@@ -530,6 +536,10 @@ public class LocalDevice extends IDevice {
   @Override
   public void resetMonitors() {
     initMonitors();
+    CaptureStream currentStream = stream;
+    if (SX.isNotNull(currentStream)) {
+      startStreaming(currentStream.fps);
+    }
   }
 
   private int initMonitors() {
@@ -726,6 +736,13 @@ public class LocalDevice extends IDevice {
     }
   }
 
+  /**
+   * when streaming (see startStreaming()), the region is taken from the latest frame,
+   * if it is not older than one frame interval (otherwise the next frame is waited for)
+   *
+   * @param args the Element to capture (default: Do.on())
+   * @return the captured Picture (also set as content of the Element)
+   */
   public Picture capture(Object... args) {
     Element what = Do.on();
     if (args.length > 0) {
@@ -733,7 +750,14 @@ public class LocalDevice extends IDevice {
         what = (Element) args[0];
       }
     }
-    Picture img = new Picture(robot.createScreenCapture(what.getRectangle()));
+    Picture img = null;
+    CaptureStream currentStream = stream;
+    if (SX.isNotNull(currentStream)) {
+      img = currentStream.getFrame(what.getRectangle());
+    }
+    if (SX.isNull(img)) {
+      img = new Picture(robot.createScreenCapture(what.getRectangle()));
+    }
     if (img.hasContent()) {
       what.setContent(img.getContent());
     } else {
@@ -743,6 +767,161 @@ public class LocalDevice extends IDevice {
   }
   //</editor-fold>
 
+  //<editor-fold desc="capture stream">
+  private volatile CaptureStream stream = null;
+
+  /**
+   * capture all monitors continuously in a thread at the given rate into a ring of reused frames:
+   * capture() (hence find, wait, observe, ...) then takes its region from the latest frame
+   * instead of capturing itself (a running stream is replaced)
+   *
+   * @param fps frames per second
+   */
+  public synchronized void startStreaming(double fps) {
+    stopStreaming();
+    if (SX.isNull(robot) || SX.isNull(allMonitors) || fps <= 0) {
+      log.error("startStreaming: not possible (no screen or fps %.1f)", fps);
+      return;
+    }
+    stream = new CaptureStream(new Rectangle(allMonitors), fps);
+    stream.start();
+    log.trace("startStreaming: %s at %.1f fps", allMonitors, fps);
+  }
+
+  public synchronized void stopStreaming() {
+    if (SX.isNull(stream)) {
+      return;
+    }
+    CaptureStream stopped = stream;
+    stream = null;
+    stopped.terminate();
+    log.trace("stopStreaming: after %d frames", stopped.getFrameNumber());
+  }
+
+  public boolean isStreaming() {
+    return SX.isNotNull(stream);
+  }
+
+  /**
+   * @return number of the latest frame of the running stream (0 if not streaming),
+   * to see, whether there is a new frame since the last look
+   */
+  public long getFrameNumber() {
+    CaptureStream currentStream = stream;
+    return SX.isNull(currentStream) ? 0 : currentStream.getFrameNumber();
+  }
+
+  private class CaptureStream extends Thread {
+
+    private final Rectangle area;
+    private final double fps;
+    private final long interval;
+    // while a frame is read, the next ones are captured into the other slots
+    private final Mat[] frames = new Mat[]{new Mat(), new Mat(), new Mat()};
+    private int latest = -1;
+    private long frameNumber = 0;
+    private long frameTime = 0;
+    private volatile boolean running = true;
+
+    CaptureStream(Rectangle area, double fps) {
+      super("SX.CaptureStream");
+      setDaemon(true);
+      this.area = area;
+      this.fps = fps;
+      interval = Math.max(1, (long) (1000 / fps));
+    }
+
+    @Override
+    public void run() {
+      int slot = 0;
+      while (running) {
+        long start = new Date().getTime();
+        try {
+          BufferedImage bImg = robot.createScreenCapture(area);
+          synchronized (frames[slot]) {
+            Element.makeMat(bImg, frames[slot]);
+          }
+        } catch (Exception e) {
+          log.error("CaptureStream: stopped: %s", e.getMessage());
+          break;
+        }
+        synchronized (this) {
+          latest = slot;
+          frameNumber++;
+          frameTime = new Date().getTime();
+          notifyAll();
+        }
+        slot = (slot + 1) % frames.length;
+        long pause = interval - (new Date().getTime() - start);
+        if (pause > 0) {
+          try {
+            Thread.sleep(pause);
+          } catch (InterruptedException e) {
+          }
+        }
+      }
+      synchronized (this) {
+        running = false;
+        notifyAll();
+      }
+    }
+
+    void terminate() {
+      running = false;
+      interrupt();
+      try {
+        join(Math.max(1000, 3 * interval));
+      } catch (InterruptedException e) {
+      }
+      for (Mat frame : frames) {
+        synchronized (frame) {
+          frame.release();
+        }
+      }
+    }
+
+    synchronized long getFrameNumber() {
+      return frameNumber;
+    }
+
+    /**
+     * @param rect what to capture (screen coordinates)
+     * @return the rect from a frame not older than one interval or null (outside, not running, timeout)
+     */
+    Picture getFrame(Rectangle rect) {
+      if (rect.isEmpty() || !area.contains(rect)) {
+        return null;
+      }
+      int slot;
+      synchronized (this) {
+        long now = new Date().getTime();
+        long waitUntil = now + Math.max(1000, 3 * interval);
+        while (running && (latest < 0 || now - frameTime > interval) && now < waitUntil) {
+          try {
+            wait(waitUntil - now);
+          } catch (InterruptedException e) {
+            return null;
+          }
+          now = new Date().getTime();
+        }
+        if (latest < 0 || now - frameTime > interval) {
+          return null;
+        }
+        slot = latest;
+      }
+      Mat frame = frames[slot];
+      synchronized (frame) {
+        if (frame.empty()) {
+          return null;
+        }
+        int x = rect.x - area.x;
+        int y = rect.y - area.y;
+        return new Picture(frame.submat(y, y + rect.height, x, x + rect.width));
+      }
+    }
+  }
+  //</editor-fold>
+
   //<editor-fold desc="*** Callback">
   private Event callback = null;
   private boolean shouldRunCallback = false;
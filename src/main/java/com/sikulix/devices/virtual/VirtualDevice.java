@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.devices.virtual;
+
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.devices.IDevice;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * a screen in memory - no display, no Robot: for tests and benchmarks of the whole chain (capture, find, observe,
+ * click) on CI machines and at rates a real screen does not allow<br>
+ * the screen is a background and a scene of Pictures (items), that appear, move and vanish over time
+ * (real time since start or a clock set by the script for repeatable runs)<br>
+ * the input is not executed, but recorded (see getInputs()), clicking an item can make it vanish
+ */
+public class VirtualDevice extends IDevice {
+
+  private static SXLog log = SX.getSXLog("SX.VirtualDevice");
+
+  private Rectangle[] monitors = new Rectangle[]{new Rectangle(0, 0, 1920, 1080)};
+  private Rectangle allMonitors = new Rectangle(monitors[0]);
+  private Mat background = null;
+  private final List<Item> items = new ArrayList<>();
+  private final List<String> inputs = new ArrayList<>();
+  private int maxInputs = 10000;
+
+  private int pointerX = 0;
+  private int pointerY = 0;
+
+  //<editor-fold desc="housekeeping">
+
+  /**
+   * @param args width, height (one monitor) or one Rectangle per monitor (default: one of 1920x1080)
+   * @return this device
+   */
+  @Override
+  public synchronized IDevice start(Object... args) {
+    if (args.length > 1 && args[0] instanceof Integer && args[1] instanceof Integer) {
+      monitors = new Rectangle[]{new Rectangle(0, 0, (Integer) args[0], (Integer) args[1])};
+    } else if (args.length > 0 && args[0] instanceof Rectangle) {
+      List<Rectangle> given = new ArrayList<>();
+      for (Object arg : args) {
+        if (arg instanceof Rectangle) {
+          given.add(new Rectangle((Rectangle) arg));
+        }
+      }
+      monitors = given.toArray(new Rectangle[0]);
+    }
+    allMonitors = new Rectangle(monitors[0]);
+    for (Rectangle monitor : monitors) {
+      allMonitors = allMonitors.union(monitor);
+    }
+    setBackground(Color.WHITE);
+    clockStart = new Date().getTime();
+    log.trace("start: %s (%d monitors)", allMonitors, monitors.length);
+    return this;
+  }
+
+  @Override
+  public synchronized void stop() {
+    items.clear();
+    inputs.clear();
+    if (SX.isNotNull(background)) {
+      background.release();
+      background = null;
+    }
+  }
+
+  @Override
+  public synchronized boolean isValid() {
+    return SX.isNotNull(background);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("VirtualDevice[%d,%d %dx%d]",
+            allMonitors.x, allMonitors.y, allMonitors.width, allMonitors.height);
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="clock">
+  private long clockStart = new Date().getTime();
+  private long manualTime = -1;
+
+  /**
+   * @return msec since start (real time) or the time set with setTime/advance
+   */
+  public synchronized long getTime() {
+    return manualTime < 0 ? new Date().getTime() - clockStart : manualTime;
+  }
+
+  /**
+   * from now on the scene only changes, when the script sets the time (repeatable runs)
+   *
+   * @param msec time since start
+   * @return this device
+   */
+  public synchronized VirtualDevice setTime(long msec) {
+    manualTime = Math.max(0, msec);
+    return this;
+  }
+
+  /**
+   * like setTime(getTime() + seconds)
+   *
+   * @param seconds might be fractional
+   * @return this device
+   */
+  public synchronized VirtualDevice advance(double seconds) {
+    return setTime(getTime() + (long) (seconds * 1000));
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="scene">
+
+  /**
+   * @param color the plain background
+   * @return this device
+   */
+  public synchronized VirtualDevice setBackground(Color color) {
+    Mat mBackground = new Mat(allMonitors.height, allMonitors.width, CvType.CV_8UC3,
+            new Scalar(color.getBlue(), color.getGreen(), color.getRed()));
+    replaceBackground(mBackground);
+    return this;
+  }
+
+  /**
+   * @param image the background (placed at the top left of the screen, the rest stays as it is)
+   * @return this device
+   */
+  public synchronized VirtualDevice setBackground(Picture image) {
+    Mat mBackground = SX.isNull(background) ?
+            new Mat(allMonitors.height, allMonitors.width, CvType.CV_8UC3, new Scalar(255, 255, 255)) :
+            background.clone();
+    int w = Math.min(image.w, allMonitors.width);
+    int h = Math.min(image.h, allMonitors.height);
+    image.getContentBGR().submat(0, h, 0, w).copyTo(mBackground.submat(0, h, 0, w));
+    replaceBackground(mBackground);
+    return this;
+  }
+
+  private void replaceBackground(Mat mBackground) {
+    if (SX.isNotNull(background)) {
+      background.release();
+    }
+    background = mBackground;
+  }
+
+  /**
+   * put a Picture on the screen (on top of the items shown before)
+   *
+   * @param image the Picture (a mask is respected)
+   * @param x     screen position
+   * @param y     screen position
+   * @return the item, to script its behavior
+   */
+  public synchronized Item show(Picture image, int x, int y) {
+    Item item = new Item(image, x, y);
+    items.add(item);
+    return item;
+  }
+
+  public synchronized List<Item> getItems() {
+    return new ArrayList<>(items);
+  }
+
+  /**
+   * remove all items
+   */
+  public synchronized void clear() {
+    items.clear();
+  }
+
+  /**
+   * a Picture on the screen: appears and vanishes at the given times, moves linearly to a given place
+   */
+  public class Item {
+    private final Picture image;
+    private int fromX;
+    private int fromY;
+    private int toX;
+    private int toY;
+    private long moveStart = 0;
+    private long moveEnd = 0;
+    private long appear = 0;
+    private long vanish = Long.MAX_VALUE;
+    private boolean vanishOnClick = false;
+
+    private Item(Picture image, int x, int y) {
+      this.image = image;
+      fromX = toX = x;
+      fromY = toY = y;
+    }
+
+    /**
+     * @param seconds from now (device time)
+     * @return this item
+     */
+    public Item appearAfter(double seconds) {
+      synchronized (VirtualDevice.this) {
+        appear = getTime() + (long) (seconds * 1000);
+      }
+      return this;
+    }
+
+    /**
+     * @param seconds from now (device time)
+     * @return this item
+     */
+    public Item vanishAfter(double seconds) {
+      synchronized (VirtualDevice.this) {
+        vanish = getTime() + (long) (seconds * 1000);
+      }
+      return this;
+    }
+
+    /**
+     * move from where it is now to the given place
+     *
+     * @param x       screen position
+     * @param y       screen position
+     * @param seconds time for the move (0: jump)
+     * @return this item
+     */
+    public Item moveTo(int x, int y, double seconds) {
+      synchronized (VirtualDevice.this) {
+        long now = getTime();
+        Element current = getLocation(now);
+        fromX = current.x;
+        fromY = current.y;
+        toX = x;
+        toY = y;
+        moveStart = now;
+        moveEnd = now + (long) (seconds * 1000);
+      }
+      return this;
+    }
+
+    /**
+     * a click into the visible item makes it vanish (e.g. a button closing a dialog)
+     *
+     * @return this item
+     */
+    public Item vanishOnClick() {
+      synchronized (VirtualDevice.this) {
+        vanishOnClick = true;
+      }
+      return this;
+    }
+
+    public void remove() {
+      synchronized (VirtualDevice.this) {
+        items.remove(this);
+      }
+    }
+
+    /**
+     * @return where it is on the screen now (not valid if not visible)
+     */
+    public Element getElement() {
+      synchronized (VirtualDevice.this) {
+        long now = getTime();
+        if (!isVisible(now)) {
+          return new Element();
+        }
+        Element location = getLocation(now);
+        return new Element(location.x, location.y, image.w, image.h);
+      }
+    }
+
+    private boolean isVisible(long time) {
+      return time >= appear && time < vanish;
+    }
+
+    private Element getLocation(long time) {
+      if (time >= moveEnd) {
+        return new Element(toX, toY);
+      }
+      double part = ((double) (time - moveStart)) / (moveEnd - moveStart);
+      return new Element((int) Math.round(fromX + part * (toX - fromX)),
+              (int) Math.round(fromY + part * (toY - fromY)));
+    }
+
+    private Rectangle getRectangle(long time) {
+      Element location = getLocation(time);
+      return new Rectangle(location.x, location.y, image.w, image.h);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Item(%dx%d) at %s", image.w, image.h, getElement());
+    }
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="capture">
+
+  /**
+   * the scene at the current device time is drawn only for the captured region
+   * (outside of the screen the region is black)
+   *
+   * @param args the Element to capture (default: all monitors)
+   * @return the captured Picture (also set as content of the Element)
+   */
+  @Override
+  public synchronized Picture capture(Object... args) {
+    Element what = new Element(allMonitors);
+    if (args.length > 0 && args[0] instanceof Element) {
+      what = (Element) args[0];
+    }
+    Rectangle rWhat = what.getRectangle();
+    if (!isValid() || rWhat.isEmpty()) {
+      what.setContent();
+      return new Picture();
+    }
+    Mat mRegion = new Mat(rWhat.height, rWhat.width, CvType.CV_8UC3, new Scalar(0, 0, 0));
+    Rectangle rScreen = rWhat.intersection(allMonitors);
+    if (!rScreen.isEmpty()) {
+      background.submat(getRect(rScreen, allMonitors)).copyTo(mRegion.submat(getRect(rScreen, rWhat)));
+    }
+    long time = getTime();
+    for (Item item : items) {
+      if (!item.isVisible(time)) {
+        continue;
+      }
+      Rectangle rItem = item.getRectangle(time);
+      Rectangle rDraw = rItem.intersection(rScreen);
+      if (rDraw.isEmpty()) {
+        continue;
+      }
+      Rect rSource = getRect(rDraw, rItem);
+      Mat mTarget = mRegion.submat(getRect(rDraw, rWhat));
+      if (item.image.hasMask()) {
+        item.image.getContentBGR().submat(rSource).copyTo(mTarget, item.image.getMask().submat(rSource));
+      } else {
+        item.image.getContentBGR().submat(rSource).copyTo(mTarget);
+      }
+    }
+    Picture picture = new Picture(mRegion);
+    mRegion.release();
+    what.setContent(picture.getContent());
+    return picture;
+  }
+
+  // the part of the rectangle relative to the origin of the other
+  private static Rect getRect(Rectangle part, Rectangle origin) {
+    return new Rect(part.x - origin.x, part.y - origin.y, part.width, part.height);
+  }
+
+  @Override
+  public Picture userCapture(Object... args) {
+    return null;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="monitors">
+  @Override
+  public synchronized int getNumberOfMonitors() {
+    return monitors.length;
+  }
+
+  @Override
+  public synchronized Rectangle getMonitor(int... ids) {
+    if (ids.length > 0) {
+      return new Rectangle(monitors[getMonitorID(ids[0])]);
+    }
+    return new Rectangle(monitors[0]);
+  }
+
+  @Override
+  public synchronized Rectangle getAllMonitors() {
+    return new Rectangle(allMonitors);
+  }
+
+  @Override
+  public int getMonitorID() {
+    return 0;
+  }
+
+  @Override
+  public synchronized int getMonitorID(int id) {
+    return id > -1 && id < monitors.length ? id : 0;
+  }
+
+  @Override
+  public void resetMonitors() {
+  }
+
+  @Override
+  public synchronized Rectangle[] getMonitors() {
+    return monitors;
+  }
+
+  @Override
+  public synchronized int getContainingMonitorID(Element element) {
+    for (int n = 0; n < monitors.length; n++) {
+      if (monitors[n].contains(element.x, element.y)) {
+        return n;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public Element getContainingMonitor(Element element) {
+    return new Element(getMonitor(getContainingMonitorID(element)));
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="mouse, keyboard">
+
+  /**
+   * @return the recorded input (e.g. "click LEFT 100,200", "key DOWN a"), oldest first
+   */
+  public synchronized List<String> getInputs() {
+    return new ArrayList<>(inputs);
+  }
+
+  public synchronized void clearInputs() {
+    inputs.clear();
+  }
+
+  private void record(String format, Object... args) {
+    inputs.add(String.format(format, args));
+    if (inputs.size() > maxInputs) {
+      inputs.remove(0);
+    }
+  }
+
+  @Override
+  public Element click(Element loc) {
+    return click(loc, Action.LEFT);
+  }
+
+  @Override
+  public Element doubleClick(Element loc) {
+    return click(loc, Action.LEFTDOUBLE);
+  }
+
+  @Override
+  public Element rightClick(Element loc) {
+    return click(loc, Action.RIGHT);
+  }
+
+  @Override
+  public Element click(Action action) {
+    return click(null, action);
+  }
+
+  @Override
+  public synchronized Element click(Element loc, Action action) {
+    Element clicked = SX.isNull(loc) ? at() : move(loc);
+    record("click %s %d,%d", action, clicked.x, clicked.y);
+    long time = getTime();
+    for (int n = items.size() - 1; n >= 0; n--) {
+      Item item = items.get(n);
+      if (item.isVisible(time) && item.getRectangle(time).contains(clicked.x, clicked.y)) {
+        if (item.vanishOnClick) {
+          item.vanish = time;
+        }
+        break;
+      }
+    }
+    return clicked;
+  }
+
+  @Override
+  public synchronized Element dragDrop(Element from, Element to, Object... times) {
+    Element start = SX.isNull(from) ? at() : move(from);
+    Element end = SX.isNull(to) ? at() : move(to);
+    record("dragDrop %d,%d %d,%d", start.x, start.y, end.x, end.y);
+    return end;
+  }
+
+  @Override
+  public void keyStart() {
+  }
+
+  @Override
+  public void keyStop() {
+  }
+
+  @Override
+  public synchronized void key(Action action, Object key) {
+    record("key %s %s", action, key);
+  }
+
+  @Override
+  public Element move(int xoff, int yoff) {
+    return move(at().offset(xoff, yoff));
+  }
+
+  @Override
+  public synchronized Element move(Element loc) {
+    if (SX.isNotNull(loc)) {
+      Element target = loc.getTarget();
+      pointerX = target.x;
+      pointerY = target.y;
+    }
+    return at();
+  }
+
+  @Override
+  public synchronized Element at() {
+    return new Element(pointerX, pointerY);
+  }
+
+  @Override
+  public synchronized void button(Action action) {
+    record("button %s %d,%d", action, pointerX, pointerY);
+  }
+
+  @Override
+  public synchronized void wheel(Action action, int steps) {
+    record("wheel %s %d", action, steps);
+  }
+  //</editor-fold>
+}
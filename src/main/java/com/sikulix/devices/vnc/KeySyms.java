@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.devices.vnc;
+
+import java.awt.event.KeyEvent;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the X11 keysyms used by the RFB protocol for the Java key codes and characters given to IDevice.key()
+ */
+public class KeySyms {
+
+  private static Map<Integer, Integer> keyCodes = new HashMap<>();
+
+  static {
+    int[][] pairs = new int[][]{
+            {KeyEvent.VK_BACK_SPACE, 0xff08}, {KeyEvent.VK_TAB, 0xff09}, {KeyEvent.VK_ENTER, 0xff0d},
+            {KeyEvent.VK_PAUSE, 0xff13}, {KeyEvent.VK_SCROLL_LOCK, 0xff14}, {KeyEvent.VK_ESCAPE, 0xff1b},
+            {KeyEvent.VK_HOME, 0xff50}, {KeyEvent.VK_LEFT, 0xff51}, {KeyEvent.VK_UP, 0xff52},
+            {KeyEvent.VK_RIGHT, 0xff53}, {KeyEvent.VK_DOWN, 0xff54}, {KeyEvent.VK_PAGE_UP, 0xff55},
+            {KeyEvent.VK_PAGE_DOWN, 0xff56}, {KeyEvent.VK_END, 0xff57}, {KeyEvent.VK_PRINTSCREEN, 0xff61},
+            {KeyEvent.VK_INSERT, 0xff63}, {KeyEvent.VK_NUM_LOCK, 0xff7f}, {KeyEvent.VK_DELETE, 0xffff},
+            {KeyEvent.VK_SHIFT, 0xffe1}, {KeyEvent.VK_CONTROL, 0xffe3}, {KeyEvent.VK_CAPS_LOCK, 0xffe5},
+            {KeyEvent.VK_META, 0xffe7}, {KeyEvent.VK_ALT, 0xffe9}, {KeyEvent.VK_WINDOWS, 0xffeb},
+            {KeyEvent.VK_ALT_GRAPH, 0xfe03}, {KeyEvent.VK_SPACE, 0x20},
+            {KeyEvent.VK_MULTIPLY, 0xffaa}, {KeyEvent.VK_ADD, 0xffab}, {KeyEvent.VK_SUBTRACT, 0xffad},
+            {KeyEvent.VK_DECIMAL, 0xffae}, {KeyEvent.VK_DIVIDE, 0xffaf}
+    };
+    for (int[] pair : pairs) {
+      keyCodes.put(pair[0], pair[1]);
+    }
+    for (int n = 0; n < 12; n++) {
+      keyCodes.put(KeyEvent.VK_F1 + n, 0xffbe + n);
+    }
+    for (int n = 0; n < 10; n++) {
+      keyCodes.put(KeyEvent.VK_NUMPAD0 + n, 0xffb0 + n);
+    }
+  }
+
+  private KeySyms() {
+  }
+
+  /**
+   * @param keyCode a Java key code (KeyEvent.VK_...)
+   * @return the keysym or -1 if not known
+   */
+  public static int fromKeyCode(int keyCode) {
+    Integer keySym = keyCodes.get(keyCode);
+    if (keySym != null) {
+      return keySym;
+    }
+    if (keyCode >= KeyEvent.VK_A && keyCode <= KeyEvent.VK_Z) {
+      return 'a' + keyCode - KeyEvent.VK_A;
+    }
+    if (keyCode >= KeyEvent.VK_0 && keyCode <= KeyEvent.VK_9) {
+      return keyCode;
+    }
+    return -1;
+  }
+
+  /**
+   * @param c a character (Latin-1 directly, others as Unicode keysym)
+   * @return the keysym
+   */
+  public static int fromChar(char c) {
+    switch (c) {
+      case '\n':
+        return 0xff0d;
+      case '\t':
+        return 0xff09;
+      case '\b':
+        return 0xff08;
+      case 0x1b:
+        return 0xff1b;
+    }
+    if ((c >= 0x20 && c <= 0x7e) || (c >= 0xa0 && c <= 0xff)) {
+      return c;
+    }
+    return 0x01000000 | c;
+  }
+}
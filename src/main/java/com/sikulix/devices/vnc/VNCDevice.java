@@ -9,11 +9,18 @@ import com.sikulix.api.Picture;
 import com.sikulix.core.*;
 import com.sikulix.devices.IDevice;
 import com.sikulix.vnc.VNCClient;
+import org.opencv.core.Mat;
 
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class VNCDevice extends IDevice implements Closeable {
 
@@ -82,8 +89,6 @@ public class VNCDevice extends IDevice implements Closeable {
   }
   //</editor-fold>
 
-  private static List<IDevice> devices = new ArrayList<>();
-
   private String ip = null;
   private Integer port = null;
   private String user = null;
@@ -91,34 +96,30 @@ public class VNCDevice extends IDevice implements Closeable {
   private Integer connectionTimeout = null;
   private Integer timeout = null;
 
-  private VNCClient client = null;
+  private volatile VNCClient client = null;
   private volatile boolean closed;
   private Picture lastScreenImage;
+  private Future<?> messages = null;
+
+  // per session: the snapshots of the damage tracking (2 * width * height * 3 bytes)
+  private static double maxFramebufferMB = SX.getOptionNumber("Settings.VNCMaxFramebufferMB", 64);
 
+  /**
+   * connect to the VNC server and register as session (see VNCManager)
+   *
+   * @param args ip, port, password, user, connectionTimeout, timeout
+   * @return this device or null if not connected (or too many sessions)
+   */
   @Override
   public IDevice start(Object... args) {
     if (Content.addExtensionFromMaven("vnc")) {
       parameters.initParameters(this, args);
       log.trace("start(): %s", parameters);
-      try {
-        client = VNCClient.connect(ip, port, password, true);
-        new Thread(new Runnable() {
-          @Override
-          public void run() {
-            try {
-              client.processMessages();
-            } catch (RuntimeException e) {
-              if (!closed) {
-                throw e;
-              }
-            }
-          }
-        }).start();
-        capture();
-        devices.add(this);
-        return this;
-      } catch (Exception e) {
-        log.error("VNCClient.connect: did not work: %s", e.getMessage());
+      if (connect()) {
+        if (VNCManager.add(this)) {
+          return this;
+        }
+        disconnect();
       }
     } else {
       log.error("sikulix2tigervnc not on classpath");
@@ -127,28 +128,192 @@ public class VNCDevice extends IDevice implements Closeable {
     return null;
   }
 
+  private synchronized boolean connect() {
+    long now = new Date().getTime();
+    lastConnect = now;
+    try {
+      client = VNCClient.connect(ip, port, password, true);
+      final VNCClient sessionClient = client;
+      messages = VNCManager.runMessages(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            sessionClient.processMessages();
+          } catch (RuntimeException e) {
+            if (!closed && sessionClient == client) {
+              lastError = e.getMessage();
+              log.error("processMessages: %s: %s", VNCDevice.this, e.getMessage());
+            }
+          }
+        }
+      });
+      Rectangle bounds = client.getBounds();
+      framebufferBytes = 2L * bounds.width * bounds.height * 3;
+      if (framebufferBytes > maxFramebufferMB * 1024 * 1024) {
+        log.error("connect: %s: %dx%d: damage tracking off (Settings.VNCMaxFramebufferMB %.0f)",
+                this, bounds.width, bounds.height, maxFramebufferMB);
+        framebufferBytes = 0;
+      } else {
+        // started with the first capture
+        damage = new DamageTracker(bounds);
+      }
+      input = new InputQueue();
+      connects++;
+      failures = 0;
+      return true;
+    } catch (Exception e) {
+      lastError = e.getMessage();
+      failures++;
+      log.error("VNCClient.connect: did not work: %s", e.getMessage());
+      disconnect();
+    }
+    return false;
+  }
+
+  private synchronized void disconnect() {
+    if (SX.isNotNull(input)) {
+      input.terminate();
+      sentEvents += input.sent;
+      coalescedMoves += input.coalesced;
+      input = null;
+    }
+    if (SX.isNotNull(damage)) {
+      damage.terminate();
+      looks += damage.looks;
+      changes += damage.changes;
+      damage = null;
+    }
+    VNCClient oldClient = client;
+    client = null;
+    if (SX.isNotNull(oldClient)) {
+      oldClient.close();
+    }
+    if (SX.isNotNull(messages)) {
+      messages.cancel(true);
+      messages = null;
+    }
+  }
+
+  /**
+   * @return true if connected and the message loop, the damage tracking and the input sending work
+   */
+  public synchronized boolean isAlive() {
+    return !closed && SX.isNotNull(client) && SX.isNotNull(messages) && !messages.isDone()
+            && (SX.isNull(damage) || damage.running) && (SX.isNull(input) || input.running);
+  }
+
+  // after repeated failures the next attempt waits longer (up to a minute)
+  synchronized boolean shouldReconnect(long now) {
+    return !closed && now - lastConnect >= Math.min(60000, 1000L << Math.min(16, failures));
+  }
+
+  /**
+   * close the connection and connect again (pointer position and button state are kept)
+   *
+   * @return success
+   */
+  public synchronized boolean reconnect() {
+    if (closed) {
+      return false;
+    }
+    disconnect();
+    reconnects++;
+    return connect();
+  }
+
   @Override
   public void stop() {
     log.trace("stop(): %s", getIp());
-    devices.remove(this);
+    VNCManager.remove(this);
     close();
   }
 
   @Override
-  public void close() {
+  public synchronized void close() {
+    if (SX.isNotNull(input)) {
+      input.flush(1000);
+    }
     closed = true;
-    client.close();
-    client = null;
+    disconnect();
   }
 
   public static void stopAll() {
-    if (devices.size() > 0) {
-      for (IDevice device : devices.toArray(new IDevice[]{})) {
-        device.stop();
-        devices.remove(device);
-      }
+    VNCManager.closeAll();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("VNCDevice(%s:%d)", ip, port);
+  }
+
+  //<editor-fold desc="metrics">
+  private long lastConnect = 0;
+  private int connects = 0;
+  private int reconnects = 0;
+  private int failures = 0;
+  private String lastError = "";
+  private long framebufferBytes = 0;
+  private long looks = 0;
+  private long changes = 0;
+  private long sentEvents = 0;
+  private long coalescedMoves = 0;
+  private long captures = 0;
+
+  public static class Metrics {
+    public final boolean alive;
+    public final int connects;
+    public final int reconnects;
+    public final long framebufferBytes;
+    public final long looks;
+    public final long changes;
+    public final long captures;
+    public final long sentEvents;
+    public final long coalescedMoves;
+    public final String lastError;
+
+    private Metrics(boolean alive, int connects, int reconnects, long framebufferBytes, long looks, long changes,
+                    long captures, long sentEvents, long coalescedMoves, String lastError) {
+      this.alive = alive;
+      this.connects = connects;
+      this.reconnects = reconnects;
+      this.framebufferBytes = framebufferBytes;
+      this.looks = looks;
+      this.changes = changes;
+      this.captures = captures;
+      this.sentEvents = sentEvents;
+      this.coalescedMoves = coalescedMoves;
+      this.lastError = lastError;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s connects: %d (reconnects %d) framebuffer: %d KB looks: %d changes: %d " +
+                      "captures: %d events: %d (moves coalesced %d)%s", alive ? "alive" : "dead", connects, reconnects,
+              framebufferBytes / 1024, looks, changes, captures, sentEvents, coalescedMoves,
+              lastError.isEmpty() ? "" : " last error: " + lastError);
+    }
+  }
+
+  /**
+   * @return the counters of this session (all connections)
+   */
+  public synchronized Metrics getMetrics() {
+    long allLooks = looks;
+    long allChanges = changes;
+    if (SX.isNotNull(damage)) {
+      allLooks += damage.looks;
+      allChanges += damage.changes;
     }
+    long allSent = sentEvents;
+    long allCoalesced = coalescedMoves;
+    if (SX.isNotNull(input)) {
+      allSent += input.sent;
+      allCoalesced += input.coalesced;
+    }
+    return new Metrics(isAlive(), connects, reconnects, framebufferBytes, allLooks, allChanges, captures,
+            allSent, allCoalesced, SX.isNull(lastError) ? "" : lastError);
   }
+  //</editor-fold>
 
   @Override
   public boolean isValid() {
@@ -201,49 +366,131 @@ public class VNCDevice extends IDevice implements Closeable {
     return null;
   }
 
+  //<editor-fold desc="mouse, keyboard">
+  // RFB pointer buttons (wheel up/down are buttons 4/5)
+  private static final int LEFT = 1;
+  private static final int MIDDLE = 2;
+  private static final int RIGHT = 4;
+  private static final int WHEELUP = 8;
+  private static final int WHEELDOWN = 16;
+
+  private volatile InputQueue input = null;
+  private int pointerX = 0;
+  private int pointerY = 0;
+  private int buttons = 0;
+
+  private int getButton(Action action) {
+    return action.toString().startsWith("L") ? LEFT : (action.toString().startsWith("R") ? RIGHT : MIDDLE);
+  }
+
+  private synchronized void pointer(int x, int y, boolean isMove) {
+    pointerX = x;
+    pointerY = y;
+    InputQueue queue = input;
+    if (SX.isNotNull(queue)) {
+      queue.pointer(buttons, x, y, isMove);
+    }
+  }
+
+  private synchronized void buttonDown(int button) {
+    buttons |= button;
+    pointer(pointerX, pointerY, false);
+  }
+
+  private synchronized void buttonUp(int button) {
+    buttons &= ~button;
+    pointer(pointerX, pointerY, false);
+  }
+
   @Override
   public Element click(Element loc) {
-    return null;
+    return click(loc, Action.LEFT);
   }
 
   @Override
   public Element doubleClick(Element loc) {
-    return null;
+    return click(loc, Action.LEFTDOUBLE);
   }
 
   @Override
   public Element rightClick(Element loc) {
-    return null;
+    return click(loc, Action.RIGHT);
   }
 
   @Override
   public Element click(Action action) {
-    return null;
+    return click(null, action);
+  }
+
+  /**
+   * an element bound to another device (e.g. found on the local screen) cannot be acted on here
+   */
+  private boolean isOtherDevice(Element loc) {
+    return SX.isNotNull(loc) && loc.isSpecial() && loc.getDevice() != this;
   }
 
   @Override
-  public Element click(Element loc, Action action) {
-    return null;
+  public synchronized Element click(Element loc, Action action) {
+    if (isOtherDevice(loc)) {
+      return null;
+    }
+    if (SX.isNull(loc)) {
+      loc = at();
+    } else {
+      loc = move(loc);
+    }
+    log.trace("click: %s at %s", action, loc);
+    int button = getButton(action);
+    int clicks = action.toString().contains("DOUBLE") ? 2 : 1;
+    for (int n = 0; n < clicks; n++) {
+      buttonDown(button);
+      buttonUp(button);
+    }
+    return loc;
   }
 
   @Override
-  public Element dragDrop(Element from, Element to, Object... times) {
-    return null;
+  public synchronized Element dragDrop(Element from, Element to, Object... times) {
+    if (isOtherDevice(from) || isOtherDevice(to)) {
+      return null;
+    }
+    if (SX.isNotNull(from)) {
+      move(from);
+    }
+    buttonDown(LEFT);
+    Element dropped = SX.isNull(to) ? at() : move(to);
+    buttonUp(LEFT);
+    log.trace("dragDrop: to: %s", dropped);
+    return dropped;
   }
 
   @Override
   public void keyStart() {
-
   }
 
   @Override
   public void keyStop() {
-
   }
 
   @Override
   public void key(Action action, Object key) {
-
+    int keySym = -1;
+    if (key instanceof Character) {
+      keySym = KeySyms.fromChar((Character) key);
+    } else if (key instanceof Integer) {
+      keySym = KeySyms.fromKeyCode((Integer) key);
+    }
+    InputQueue queue = input;
+    if (keySym < 0 || SX.isNull(queue)) {
+      log.trace("key: not possible: %s (%s)", key, action);
+      return;
+    }
+    if (action != Action.UP) {
+      queue.key(keySym, true);
+    }
+    if (action != Action.DOWN) {
+      queue.key(keySym, false);
+    }
   }
 
   /**
@@ -255,77 +502,545 @@ public class VNCDevice extends IDevice implements Closeable {
    */
   @Override
   public Element move(int xoff, int yoff) {
-    return null;
+    return move(at().offset(xoff, yoff));
   }
 
   /**
-   * move the mouse to the target of given Element (default center)
+   * move the mouse to the target of given Element (default center)<br>
+   * no intermediate steps: queued moves not yet sent are replaced by the newest
    *
    * @param loc
    * @return the new mouseposition as Element (might be invalid)
    */
   @Override
   public Element move(Element loc) {
-    return null;
+    if (SX.isNotNull(loc)) {
+      loc = loc.getTarget();
+      pointer(loc.x, loc.y, true);
+    }
+    return at();
   }
 
   /**
    * @return the current mouseposition as Element (might be invalid)
    */
   @Override
-  public Element at() {
-    return null;
+  public synchronized Element at() {
+    return new Element(pointerX, pointerY);
   }
 
   @Override
   public void button(Action action) {
-
+    if (action.toString().contains("DOWN")) {
+      buttonDown(getButton(action));
+    } else {
+      buttonUp(getButton(action));
+    }
   }
 
   @Override
-  public void wheel(Action action, int steps) {
+  public synchronized void wheel(Action action, int steps) {
+    int button = action.toString().contains("DOWN") ? WHEELDOWN : WHEELUP;
+    for (int n = 0; n < steps; n++) {
+      buttonDown(button);
+      buttonUp(button);
+    }
+  }
 
+  /**
+   * waits until all queued input is sent (done before each capture)
+   *
+   * @return false if not sent within Settings.VNCSettleTimeout
+   */
+  public boolean flush() {
+    InputQueue queue = input;
+    return SX.isNull(queue) || queue.flush((long) (settleTimeout * 1000));
   }
 
-  int maxChecks = 100;
+  /**
+   * the input events are queued and sent in batches (by a thread of the shared pool, one batch at a time):
+   * a pointer move replaces a move of the same button state not yet sent, so only the newest position goes
+   * over the wire
+   */
+  private class InputQueue implements Runnable {
+
+    private static final int MOVE = 0;
+    private static final int BUTTON = 1;
+    private static final int KEY = 2;
+
+    private final LinkedList<int[]> events = new LinkedList<>();
+    private boolean scheduled = false;
+    private long posted = 0;
+    private volatile long sent = 0;
+    private long lastSent = 0;
+    private volatile long coalesced = 0;
+    private volatile boolean running = true;
+
+    synchronized void pointer(int mask, int x, int y, boolean isMove) {
+      int[] last = events.peekLast();
+      if (isMove && SX.isNotNull(last) && last[0] == MOVE && last[1] == mask) {
+        last[2] = x;
+        last[3] = y;
+        coalesced++;
+        return;
+      }
+      post(new int[]{isMove ? MOVE : BUTTON, mask, x, y});
+    }
+
+    synchronized void key(int keySym, boolean down) {
+      post(new int[]{KEY, keySym, down ? 1 : 0, 0});
+    }
+
+    private void post(int[] event) {
+      if (!running) {
+        return;
+      }
+      events.add(event);
+      posted++;
+      if (!scheduled) {
+        scheduled = true;
+        VNCManager.getWorkPool().execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      List<int[]> batch = new ArrayList<>();
+      while (true) {
+        synchronized (this) {
+          if (!running || events.isEmpty()) {
+            scheduled = false;
+            notifyAll();
+            return;
+          }
+          batch.addAll(events);
+          events.clear();
+        }
+        VNCClient sessionClient = client;
+        try {
+          for (int[] event : batch) {
+            if (event[0] == KEY) {
+              sessionClient.keyEvent(event[1], event[2] == 1);
+            } else {
+              sessionClient.mouseEvent(event[1], event[2], event[3]);
+            }
+          }
+        } catch (RuntimeException e) {
+          if (running && !closed) {
+            lastError = e.getMessage();
+            log.error("InputQueue: %s: stopped: %s", VNCDevice.this, e.getMessage());
+          }
+          running = false;
+        }
+        synchronized (this) {
+          sent += batch.size();
+          lastSent = new Date().getTime();
+          notifyAll();
+        }
+        batch.clear();
+      }
+    }
+
+    synchronized boolean flush(long timeout) {
+      long now = new Date().getTime();
+      long waitUntil = now + timeout;
+      while (running && sent < posted && now < waitUntil) {
+        try {
+          wait(waitUntil - now);
+        } catch (InterruptedException e) {
+          return false;
+        }
+        now = new Date().getTime();
+      }
+      return sent >= posted;
+    }
+
+    synchronized long getLastSent() {
+      return lastSent;
+    }
 
+    void terminate() {
+      flush(1000);
+      synchronized (this) {
+        running = false;
+        events.clear();
+      }
+      log.trace("InputQueue: %s: %d events sent (%d moves coalesced)", VNCDevice.this, sent, coalesced);
+    }
+  }
+  //</editor-fold>
+
+  /**
+   * sends the queued input and takes the region from the latest framebuffer snapshot<br>
+   * only if input was sent since the previous capture, it first waits until the region did not change
+   * for Settings.VNCSettleTime after that (at most Settings.VNCSettleTimeout) - to wait for a region
+   * that changes by itself use waitSettled()
+   *
+   * @param args the Element to capture (default: the whole screen)
+   * @return the captured Picture (also set as content of the Element)
+   */
   @Override
   public Picture capture(Object... args) {
-    Element what = new Element(client.getBounds());
+    VNCClient sessionClient = client;
+    Element what = null;
     if (args.length > 0) {
       if (args[0] instanceof Element) {
         what = (Element) args[0];
       }
     }
-    if (maxChecks > 0) {
-      client.refreshFramebuffer(what.x, what.y, what.w, what.h, false);
-    }
-    Picture picture2;
-    Picture picture1 = new Picture(client.getFrameBuffer(what.x, what.y, what.w, what.h));
-    if (maxChecks > 0) {
-      SX.pause(0.15);
-      picture2 = new Picture(client.getFrameBuffer(what.x, what.y, what.w, what.h));
-      List<Element> rectangles = Finder.detectChanges(picture1.getContent(), picture2.getContent());
-      while (rectangles.size() == 0) {
-        picture1 = new Picture(picture2);
-        picture2 = new Picture(client.getFrameBuffer(what.x, what.y, what.w, what.h));
-        rectangles = Finder.detectChanges(picture1.getContent(), picture2.getContent());
-        maxChecks--;
-        if (maxChecks < 0) {
-          break;
-        }
+    if (SX.isNull(sessionClient)) {
+      log.error("capture: %s not connected", this);
+      if (SX.isNotNull(what)) {
+        what.setContent();
       }
-      while (rectangles.size() > 0) {
-        picture1 = new Picture(picture2);
-        picture2 = new Picture(client.getFrameBuffer(what.x, what.y, what.w, what.h));
-        rectangles = Finder.detectChanges(picture1.getContent(), picture2.getContent());
+      return new Picture();
+    }
+    if (SX.isNull(what)) {
+      what = new Element(sessionClient.getBounds());
+    }
+    Picture picture = null;
+    long inputTime = 0;
+    InputQueue queue = input;
+    if (SX.isNotNull(queue)) {
+      queue.flush((long) (settleTimeout * 1000));
+      inputTime = queue.getLastSent();
+    }
+    DamageTracker tracker = getTracker();
+    if (SX.isNotNull(tracker)) {
+      // without new input only a current snapshot is needed (a clock or a caret would block the wait)
+      double quiet = inputTime > settledInput ? settleTime : 0;
+      if (!tracker.waitSettled(what.getRectangle(), inputTime, quiet, settleTimeout)) {
+        log.trace("capture: %s not settled after %.1f sec", what, settleTimeout);
       }
-      maxChecks = 0;
+      settledInput = inputTime;
+      picture = tracker.getFrame(what.getRectangle());
+    }
+    if (SX.isNull(picture)) {
+      picture = new Picture(sessionClient.getFrameBuffer(what.x, what.y, what.w, what.h));
+    }
+    synchronized (this) {
+      captures++;
+    }
+    if (picture.hasContent()) {
+      what.setContent(picture.getContent());
     } else {
-      return picture1;
+      what.setContent();
+    }
+    return picture;
+  }
+
+  //<editor-fold desc="damage tracking">
+  private double settleTime = SX.getOptionNumber("Settings.VNCSettleTime", 0.15);
+  private double settleTimeout = SX.getOptionNumber("Settings.VNCSettleTimeout", 3);
+
+  private volatile DamageTracker damage = null;
+  // time of the input the last capture waited for
+  private volatile long settledInput = 0;
+
+  /**
+   * the damage tracker, (re)started if it was paused for lack of use
+   */
+  private DamageTracker getTracker() {
+    DamageTracker tracker = damage;
+    if (SX.isNotNull(tracker)) {
+      tracker.touch();
+    }
+    return tracker;
+  }
+
+  /**
+   * @return time (msec) of the latest change of the screen (0 if none seen yet)
+   */
+  public long getLastChange() {
+    DamageTracker tracker = getTracker();
+    return SX.isNull(tracker) ? 0 : tracker.getLastChange(null);
+  }
+
+  /**
+   * @param time msec
+   * @return true if the screen changed after the given time (always true if not tracked then)
+   */
+  public boolean isDirtySince(long time) {
+    DamageTracker tracker = getTracker();
+    return SX.isNull(tracker) || time < tracker.getKnownSince() || tracker.getLastChange(null) > time;
+  }
+
+  /**
+   * @return time (msec) since when the screen did not change (the time tracking (re)started if it never changed)
+   */
+  public long getSettledSince() {
+    DamageTracker tracker = getTracker();
+    return SX.isNull(tracker) ? new Date().getTime() : Math.max(tracker.getLastChange(null), tracker.getKnownSince());
+  }
+
+  /**
+   * @param quiet   seconds the region must not have changed
+   * @param timeout max seconds to wait
+   * @return true if settled, false if still changing after the timeout
+   */
+  public boolean waitSettled(Element what, double quiet, double timeout) {
+    DamageTracker tracker = getTracker();
+    return SX.isNull(tracker) || tracker.waitSettled(what.getRectangle(), 0, quiet, timeout);
+  }
+
+  @Override
+  public boolean isDamageTracked() {
+    return true;
+  }
+
+  /**
+   * the changed parts of the given Element since the given time, usable as regions for Finder.find(target, regions)
+   * to re-match only what changed (the wait loops of Finder.PossibleMatch capture and search again only then)
+   *
+   * @param what  the Element (e.g. the base of a Finder)
+   * @param since time (msec)
+   * @return the regions (relative to the Element), the whole Element if the changes since then are no longer known
+   */
+  @Override
+  public List<Element> getDamage(Element what, long since) {
+    List<Element> regions = new ArrayList<>();
+    DamageTracker tracker = getTracker();
+    if (SX.isNull(tracker) || since < tracker.getKnownSince()) {
+      regions.add(new Element(0, 0, what.w, what.h));
+      return regions;
+    }
+    Rectangle rWhat = what.getRectangle();
+    for (Element region : tracker.getDamage(since)) {
+      Rectangle rChanged = region.getRectangle().intersection(rWhat);
+      if (!rChanged.isEmpty()) {
+        regions.add(new Element(rChanged.x - what.x, rChanged.y - what.y, rChanged.width, rChanged.height));
+      }
+    }
+    return Finder.mergeRectangles(regions, 1);
+  }
+
+  private static class Damage {
+    final long time;
+    final Element region;
+
+    Damage(long time, Element region) {
+      this.time = time;
+      this.region = region;
+    }
+  }
+
+  /**
+   * keeps a snapshot of the framebuffer (updated incrementally by the server) and records the regions
+   * of changed tiles together with the time, when they were seen<br>
+   * a look at the framebuffer is a scheduled task of the shared pool (every Settings.VNCDamageInterval seconds)<br>
+   * looking is paused, when the session was not used for Settings.VNCDamageIdle seconds
+   * (the changes seen before are then forgotten)
+   */
+  private class DamageTracker implements Runnable {
+
+    private final Rectangle bounds;
+    private final long interval = (long) (1000 * SX.getOptionNumber("Settings.VNCDamageInterval", 0.2));
+    private final long idleTime = (long) (1000 * SX.getOptionNumber("Settings.VNCDamageIdle", 10));
+    private final int maxHistory = 256;
+
+    // the snapshots are only touched while holding the look lock (the readers hold the tracker)
+    private final Object lookLock = new Object();
+    private ScheduledFuture<?> future = null;
+    private volatile boolean isFirst = true;
+    private volatile long lastUse = 0;
+    private Mat frame = new Mat();
+    private Mat spare = new Mat();
+    private TileHash hash = null;
+    private final LinkedList<Damage> history = new LinkedList<>();
+    private long knownSince = 0;
+    private long lastChange = 0;
+    private long lastLook = 0;
+    private volatile boolean running = true;
+    private volatile long looks = 0;
+    private volatile long changes = 0;
+
+    DamageTracker(Rectangle bounds) {
+      this.bounds = bounds;
+    }
+
+    /**
+     * marks the tracker as used, starts looking if paused
+     */
+    void touch() {
+      long now = new Date().getTime();
+      lastUse = now;
+      synchronized (this) {
+        if (!running || SX.isNotNull(future)) {
+          return;
+        }
+        // what happened while paused is not known: start over with a full update
+        isFirst = true;
+        hash = null;
+        history.clear();
+        knownSince = now;
+        lastChange = 0;
+        future = VNCManager.getWorkPool().scheduleWithFixedDelay(this, 0, Math.max(1, interval), TimeUnit.MILLISECONDS);
+      }
+      log.trace("DamageTracker: %s: looking", VNCDevice.this);
+    }
+
+    private synchronized void pause() {
+      if (SX.isNotNull(future)) {
+        future.cancel(false);
+        future = null;
+      }
+    }
+
+    @Override
+    public void run() {
+      synchronized (lookLock) {
+        if (!running) {
+          return;
+        }
+        synchronized (this) {
+          // checked while holding the tracker: a concurrent touch() either is seen here or restarts
+          if (new Date().getTime() - lastUse > idleTime) {
+            pause();
+            log.trace("DamageTracker: %s: paused (not used)", VNCDevice.this);
+            return;
+          }
+        }
+        VNCClient sessionClient = client;
+        try {
+          if (isFirst) {
+            // the first look after the full update has arrived
+            isFirst = false;
+            sessionClient.refreshFramebuffer(bounds.x, bounds.y, bounds.width, bounds.height, false);
+            return;
+          }
+          look(sessionClient);
+          // the server sends only what changed, applied by processMessages until the next look
+          sessionClient.refreshFramebuffer(bounds.x, bounds.y, bounds.width, bounds.height, true);
+        } catch (RuntimeException e) {
+          if (running && !closed) {
+            lastError = e.getMessage();
+            log.error("DamageTracker: %s: stopped: %s", VNCDevice.this, e.getMessage());
+          }
+          synchronized (this) {
+            running = false;
+            notifyAll();
+          }
+          pause();
+        }
+      }
+    }
+
+    private void look(VNCClient sessionClient) {
+      BufferedImage bImg = sessionClient.getFrameBuffer(bounds.x, bounds.y, bounds.width, bounds.height);
+      Element.makeMat(bImg, spare);
+      TileHash spareHash = new TileHash(spare);
+      List<Element> changed = new ArrayList<>();
+      if (SX.isNotNull(hash) && spareHash.hasChanged(hash)) {
+        changed = spareHash.getChangedRegions(hash);
+      }
+      looks++;
+      synchronized (this) {
+        lastLook = new Date().getTime();
+        Mat previous = frame;
+        frame = spare;
+        spare = previous;
+        hash = spareHash;
+        if (changed.size() > 0) {
+          long now = new Date().getTime();
+          for (Element change : changed) {
+            change.translate(bounds.x, bounds.y);
+            history.add(new Damage(now, change));
+          }
+          while (history.size() > maxHistory) {
+            knownSince = history.removeFirst().time;
+          }
+          lastChange = now;
+          changes += changed.size();
+        }
+        notifyAll();
+      }
+    }
+
+    void terminate() {
+      synchronized (this) {
+        running = false;
+        notifyAll();
+      }
+      pause();
+      synchronized (lookLock) {
+        synchronized (this) {
+          frame.release();
+          spare.release();
+        }
+      }
+    }
+
+    synchronized long getKnownSince() {
+      return knownSince;
+    }
+
+    /**
+     * @param rect only changes touching it (null: all)
+     * @return time of the latest change (0 if none)
+     */
+    synchronized long getLastChange(Rectangle rect) {
+      if (SX.isNull(rect)) {
+        return lastChange;
+      }
+      for (int n = history.size() - 1; n >= 0; n--) {
+        Damage entry = history.get(n);
+        if (entry.region.getRectangle().intersects(rect)) {
+          return entry.time;
+        }
+      }
+      return history.size() < maxHistory ? 0 : knownSince;
+    }
+
+    synchronized List<Element> getDamage(long since) {
+      List<Element> regions = new ArrayList<>();
+      for (Damage entry : history) {
+        if (entry.time > since) {
+          regions.add(entry.region);
+        }
+      }
+      return regions;
+    }
+
+    /**
+     * @param after not before this time (msec, e.g. the last input)
+     */
+    synchronized boolean waitSettled(Rectangle rect, long after, double quiet, double timeout) {
+      long now = new Date().getTime();
+      long waitUntil = now + (long) (timeout * 1000);
+      long quietTime = (long) (quiet * 1000);
+      while (running) {
+        long settledSince = Math.max(Math.max(knownSince, after), getLastChange(rect));
+        // the quiet time must have been seen by a look
+        if (SX.isNotNull(hash) && lastLook - settledSince >= quietTime) {
+          return true;
+        }
+        if (now >= waitUntil) {
+          return false;
+        }
+        try {
+          wait(Math.min(waitUntil - now, Math.max(1, settledSince + quietTime + interval - now)));
+        } catch (InterruptedException e) {
+          return false;
+        }
+        now = new Date().getTime();
+      }
+      return false;
+    }
+
+    /**
+     * @param rect what to capture (screen coordinates)
+     * @return the rect from the latest snapshot or null (outside, no snapshot yet)
+     */
+    synchronized Picture getFrame(Rectangle rect) {
+      if (frame.empty() || rect.isEmpty() || !bounds.contains(rect)) {
+        return null;
+      }
+      int x = rect.x - bounds.x;
+      int y = rect.y - bounds.y;
+      return new Picture(frame.submat(y, y + rect.height, x, x + rect.width));
     }
-    return picture2;
   }
+  //</editor-fold>
 
   @Override
   public Picture userCapture(Object... args) {
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.devices.vnc;
+
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * the VNC sessions of this JVM: at most Settings.VNCMaxSessions are open at the same time<br>
+ * each connection needs one thread for its message loop (VNCClient.processMessages blocks),
+ * all other work of the sessions (damage tracking, sending input, health checks) shares a pool of
+ * Settings.VNCThreads threads<br>
+ * sessions whose connection broke are reconnected by the health check (every Settings.VNCHealthInterval seconds,
+ * repeated failures wait longer before the next attempt)
+ */
+public class VNCManager {
+
+  private static final SXLog log = SX.getSXLog("SX.VNCManager");
+
+  private static final List<VNCDevice> sessions = new ArrayList<>();
+  private static ThreadPoolExecutor messagePool = null;
+  private static ScheduledThreadPoolExecutor workPool = null;
+  private static ScheduledFuture<?> healthCheck = null;
+
+  private VNCManager() {
+  }
+
+  // the options are read when used: they can be changed while the JVM runs
+  private static int getMaxSessions() {
+    return Math.max(1, (int) SX.getOptionNumber("Settings.VNCMaxSessions", 64));
+  }
+
+  private static ThreadFactory getThreadFactory(final String name) {
+    return new ThreadFactory() {
+      private int count = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, String.format("SX.%s-%d", name, ++count));
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * open a new session (see VNCDevice.start() for the parameters)
+   *
+   * @param args ip, port, password, ...
+   * @return the started device or null (not connected or too many sessions)
+   */
+  public static VNCDevice open(Object... args) {
+    int maxSessions = getMaxSessions();
+    if (getSessionCount() >= maxSessions) {
+      log.error("open: already %d sessions (Settings.VNCMaxSessions)", maxSessions);
+      return null;
+    }
+    return (VNCDevice) new VNCDevice().start(args);
+  }
+
+  static synchronized boolean add(VNCDevice device) {
+    int maxSessions = getMaxSessions();
+    if (sessions.size() >= maxSessions) {
+      log.error("add: already %d sessions (Settings.VNCMaxSessions): %s", maxSessions, device);
+      return false;
+    }
+    sessions.add(device);
+    double healthInterval = SX.getOptionNumber("Settings.VNCHealthInterval", 5);
+    if (SX.isNull(healthCheck) && healthInterval > 0) {
+      long interval = (long) (healthInterval * 1000);
+      healthCheck = getWorkPool().scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          checkHealth();
+        }
+      }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    return true;
+  }
+
+  static synchronized void remove(VNCDevice device) {
+    sessions.remove(device);
+    if (sessions.isEmpty() && SX.isNotNull(healthCheck)) {
+      healthCheck.cancel(false);
+      healthCheck = null;
+    }
+  }
+
+  public static synchronized List<VNCDevice> getSessions() {
+    return new ArrayList<>(sessions);
+  }
+
+  public static synchronized int getSessionCount() {
+    return sessions.size();
+  }
+
+  public static void closeAll() {
+    for (VNCDevice device : getSessions()) {
+      device.stop();
+    }
+  }
+
+  /**
+   * @param messageLoop a connection's message loop
+   * @return its future (done when the connection ended)
+   * @throws RejectedExecutionException if there are too many connections
+   */
+  static synchronized Future<?> runMessages(Runnable messageLoop) {
+    if (SX.isNull(messagePool)) {
+      // room for the loops of closed connections, that are still ending
+      messagePool = new ThreadPoolExecutor(0, 2 * getMaxSessions(), 60, TimeUnit.SECONDS,
+              new SynchronousQueue<Runnable>(), getThreadFactory("VNCMessages"));
+    }
+    return messagePool.submit(messageLoop);
+  }
+
+  static synchronized ScheduledExecutorService getWorkPool() {
+    if (SX.isNull(workPool)) {
+      int threads = (int) SX.getOptionNumber("Settings.VNCThreads", Runtime.getRuntime().availableProcessors());
+      workPool = new ScheduledThreadPoolExecutor(Math.max(1, threads), getThreadFactory("VNCWork"));
+      workPool.setRemoveOnCancelPolicy(true);
+    }
+    return workPool;
+  }
+
+  private static void checkHealth() {
+    long now = new Date().getTime();
+    for (VNCDevice device : getSessions()) {
+      if (device.isAlive() || !device.shouldReconnect(now)) {
+        continue;
+      }
+      log.trace("checkHealth: reconnecting: %s", device);
+      device.reconnect();
+    }
+  }
+
+  /**
+   * @return one line per session with its metrics
+   */
+  public static String getMetrics() {
+    StringBuilder metrics = new StringBuilder();
+    for (VNCDevice device : getSessions()) {
+      metrics.append(device).append(": ").append(device.getMetrics()).append("\n");
+    }
+    return metrics.toString();
+  }
+}
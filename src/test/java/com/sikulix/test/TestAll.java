@@ -10,6 +10,7 @@ import com.sikulix.core.*;
 import com.sikulix.devices.IDevice;
 import com.sikulix.devices.hook.HookDevice;
 import com.sikulix.devices.vnc.VNCDevice;
+import com.sikulix.devices.vnc.VNCManager;
 import com.sikulix.run.Runner;
 import org.junit.*;
 import org.junit.runners.MethodSorters;
@@ -844,6 +845,31 @@ public class TestAll {
       vnc.stop();
     }
   }
+
+  @Ignore
+  public void test_602_manyVNC() {
+    currentTest = "test_602_manyVNC";
+    if (!SX.isTravisCI()) {
+      result = "sessions to local VNC servers (e.g. Xvnc on ports 5901 ...) captured in turn";
+      List<VNCDevice> sessions = new ArrayList<>();
+      for (int n = 1; n <= 4; n++) {
+        VNCDevice vnc = VNCManager.open("127.0.0.1", 5900 + n, "vnc");
+        if (SX.isNotNull(vnc)) {
+          sessions.add(vnc);
+        }
+      }
+      start();
+      for (int n = 0; n < 10; n++) {
+        for (VNCDevice vnc : sessions) {
+          vnc.click(new Element(100 + n, 100));
+          assert vnc.capture().hasContent() : "capture did not work: " + vnc;
+        }
+      }
+      log.p("time: %s\n%s", end(), VNCManager.getMetrics());
+      VNCManager.closeAll();
+      assert VNCManager.getSessionCount() == 0 : "sessions not closed";
+    }
+  }
   //</editor-fold>
 
   //log.startTimer();
@@ -5,15 +5,12 @@
 package com.sikulix.test;
 
 import com.sikulix.api.Do;
-import com.sikulix.api.Element;
 import com.sikulix.api.Picture;
-import com.sikulix.api.Target;
 import com.sikulix.core.SX;
 import com.sikulix.core.SXLog;
 import com.sikulix.core.SXTest;
 import org.junit.*;
 import org.junit.runners.MethodSorters;
-import org.opencv.core.Mat;
 
 @Ignore
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -118,6 +115,4 @@ public class TestApiPicture {
     assert success;
     currentTest.setResult(result);
   }
-
-
 }
@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.test;
+
+import com.sikulix.api.Do;
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.FFTMatcher;
+import com.sikulix.core.FindPriors;
+import com.sikulix.core.Finder;
+import com.sikulix.core.MatPool;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.core.SXTest;
+import com.sikulix.core.TileHash;
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestFinder {
+
+  static SXLog log = SX.getSXLog("SX_TestFinder");
+
+  private static String defaultImagePath = "SX_Images";
+  private static String mavenRoot = "target/classes";
+  private static String imageNameDefault = "sikulix2";
+
+  @BeforeClass
+  public static void setUpClass() {
+    log.on(SXLog.INFO);
+    SX.loadNative(SX.NATIVES.OPENCV);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+  }
+
+  @Before
+  public void setUp() {
+  }
+
+  @After
+  public void tearDown() {
+    log.info("%s", currentTest);
+  }
+
+  private SXTest currentTest;
+
+  @Test
+  public void test_010_findGray() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture base = new Picture(imageNameDefault);
+    Picture target = new Picture(imageNameDefault);
+    target.setGrayMatch(true);
+    Mat mGray = base.getContentGray();
+    success &= mGray.channels() == 1 && mGray == base.getContentGray();
+    Element match = new Finder(base).find(target);
+    success &= match.isValid() && match.getScore() > 0.99;
+    // same brightness, opposite colors (a and b inverted in Lab): found in gray, dropped in color
+    Mat mOtherColor = new Mat();
+    Imgproc.cvtColor(base.getContentBGR(), mOtherColor, Imgproc.COLOR_BGR2Lab);
+    List<Mat> channels = new ArrayList<>();
+    Core.split(mOtherColor, channels);
+    Core.bitwise_not(channels.get(1), channels.get(1));
+    Core.bitwise_not(channels.get(2), channels.get(2));
+    Core.merge(channels, mOtherColor);
+    Imgproc.cvtColor(mOtherColor, mOtherColor, Imgproc.COLOR_Lab2BGR);
+    Picture baseOtherColor = new Picture(mOtherColor);
+    Element noMatch = new Finder(baseOtherColor).find(target);
+    success &= !noMatch.isValid();
+    String result = String.format("gray: %s match: %s other color: %s", base.isGray(), match, noMatch.isValid());
+    base.release();
+    baseOtherColor.release();
+    mOtherColor.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_020_matchFFT() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture picture = new Picture(imageNameDefault);
+    Mat mBase = new Mat();
+    Imgproc.resize(picture.getContentBGR(), mBase, new Size(400, 360));
+    Mat mProbe = mBase.submat(70, 320, 90, 340).clone();
+    Mat mExpected = new Mat();
+    Imgproc.matchTemplate(mBase, mProbe, mExpected, Imgproc.TM_CCOEFF_NORMED);
+    Mat mResult = new Mat(mExpected.size(), CvType.CV_32F);
+    FFTMatcher.matchTemplate(mBase, mProbe, mResult);
+    Mat mDiff = new Mat();
+    Core.absdiff(mExpected, mResult, mDiff);
+    double maxDiff = Core.minMaxLoc(mDiff).maxVal;
+    Point expected = Core.minMaxLoc(mExpected).maxLoc;
+    Point best = Core.minMaxLoc(mResult).maxLoc;
+    success &= maxDiff < 1e-4 && best.equals(expected) && best.x == 90 && best.y == 70;
+    String result = String.format("max diff: %.2e best: %s", maxDiff, best);
+    for (Mat mat : new Mat[]{mBase, mProbe, mExpected, mResult, mDiff}) {
+      mat.release();
+    }
+    picture.release();
+    assert success;
+    currentTest.setResult(result);
+  }
+
+  @Test
+  public void test_030_findAllOverlapping() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture picture = new Picture(imageNameDefault);
+    // the target has white margins of 20 left and right: copies can overlap without hiding each other
+    Mat mTarget = new Mat(128, 128, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    Mat mInner = picture.getContentBGR().submat(0, 128, 20, 108);
+    mInner.copyTo(mTarget.submat(0, 128, 20, 108));
+    Mat mBase = new Mat(200, 600, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    // 200 and 308 overlap by 20 columns (intersection over union 0.09)
+    for (int x : new int[]{20, 200, 308, 450}) {
+      mInner.copyTo(mBase.submat(30, 158, x + 20, x + 108));
+    }
+    Picture target = new Picture(mTarget);
+    Picture base = new Picture(mBase);
+    List<Element> matches = new Finder(base).findAll(target);
+    Finder finder = new Finder(base);
+    finder.setMaxOverlap(0);
+    List<Element> matchesNoOverlap = finder.findAll(target);
+    success &= matches.size() == 4 && matchesNoOverlap.size() == 3;
+    String result = String.format("default: %d no overlap: %d", matches.size(), matchesNoOverlap.size());
+    mTarget.release();
+    mBase.release();
+    picture.release();
+    target.release();
+    base.release();
+    assert success;
+    currentTest.setResult(result);
+  }
+
+  @Test
+  public void test_040_findScaled() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    Mat mScaled = new Mat();
+    Imgproc.resize(target.getContentBGR(), mScaled, new Size(target.w * 1.5, target.h * 1.5));
+    Picture base = new Picture(mScaled);
+    Finder finder = new Finder(base);
+    finder.setScales(1, 2, 0.25);
+    Element match = finder.find(target);
+    success &= match.isValid() && match.w == (int) base.w && target.getLastScale() == 1.5;
+    String result = String.format("scale: %.2f match: %s", target.getLastScale(), match);
+    base.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_050_findPriors() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    FindPriors.clear();
+    Picture target = new Picture(imageNameDefault);
+    Mat mTarget = target.getContentBGR();
+    Mat mBase = new Mat(300, 500, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    mTarget.copyTo(mBase.submat(50, 178, 50, 178));
+    Picture base = new Picture(mBase);
+    Element match = new Finder(base).find(target);
+    success &= match.x == 50 && Finder.FindTier.BASE.equals(match.getFindTier());
+    // the second time it is found at the learned place (or the last seen place)
+    match = new Finder(base).find(target);
+    success &= match.x == 50 && !Finder.FindTier.BASE.equals(match.getFindTier());
+    // at the learned place now something similar (%94), the target itself elsewhere: the best must win
+    Mat mOther = mBase.clone();
+    mOther.submat(50, 90, 50, 90).setTo(new Scalar(128, 128, 128));
+    mTarget.copyTo(mOther.submat(100, 228, 300, 428));
+    Picture other = new Picture(mOther);
+    Element best = new Finder(other).find(target);
+    success &= best.x == 300 && best.y == 100;
+    String result = String.format("tier: %s best: (%d, %d) %s", match.getFindTier(), best.x, best.y, best.getFindTier());
+    mBase.release();
+    mOther.release();
+    base.release();
+    other.release();
+    target.release();
+    assert success;
+    currentTest.setResult(result);
+  }
+
+  @Test
+  public void test_060_findPyramidFallback() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    Mat mBase = new Mat(400, 600, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    target.getContentBGR().copyTo(mBase.submat(200, 200 + target.h, 350, 350 + target.w));
+    Picture base = new Picture(mBase);
+    Finder finder = new Finder(base);
+    // no candidate can survive the downsized levels: only the search in the original finds the target
+    finder.setPyramid(3, -1);
+    Element match = finder.find(target);
+    success &= target.getResizeFactor() > 1.5 && match.x == 350 && match.y == 200 && match.getScore() > 0.99;
+    String result = String.format("match: %s", match);
+    mBase.release();
+    base.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_070_findBest() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    Mat mTarget = target.getContentBGR();
+    Mat mBase = new Mat(300, 600, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    // two changed copies before the exact one: find() must take the best place, not the first peak
+    for (int x : new int[]{20, 220, 420}) {
+      Mat mCopy = mBase.submat(100, 100 + target.h, x, x + target.w);
+      mTarget.copyTo(mCopy);
+      if (x < 420) {
+        mCopy.submat(0, 10 + x / 20, 0, 10 + x / 20).setTo(new Scalar(0, 0, 255));
+      }
+    }
+    Picture base = new Picture(mBase);
+    Finder finder = new Finder(base);
+    finder.setPyramid(0);
+    finder.setLearnPriors(false);
+    Element match = finder.find(target);
+    List<Element> matches = new Finder(base).findAll(target);
+    success &= match.x == 420 && match.y == 100 && match.getScore() > 0.99 && matches.size() == 3;
+    String result = String.format("match: %s all: %d", match, matches.size());
+    mBase.release();
+    base.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  // the target at (50, 50), the target flipped at (400, 200)
+  private Mat makeAnyBase(Picture target) {
+    Mat mBase = new Mat(400, 700, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    target.getContentBGR().copyTo(mBase.submat(50, 50 + target.h, 50, 50 + target.w));
+    Core.flip(target.getContentBGR(), mBase.submat(200, 200 + target.h, 400, 400 + target.w), 1);
+    return mBase;
+  }
+
+  private List<Picture> makeAnyTargets(Picture target) {
+    Mat mFlipped = new Mat();
+    Core.flip(target.getContentBGR(), mFlipped, 1);
+    Mat mNoise = new Mat(target.h, target.w, CvType.CV_8UC3);
+    Core.randu(mNoise, 0, 256);
+    List<Picture> targets = Arrays.asList(target, new Picture(mFlipped), new Picture(mNoise), null);
+    mFlipped.release();
+    mNoise.release();
+    return targets;
+  }
+
+  private boolean isAnyFound(List<Element> matches) {
+    return matches.size() == 4
+            && matches.get(0).x == 50 && matches.get(0).y == 50 && matches.get(0).getMatchIndex() == 0
+            && matches.get(1).x == 400 && matches.get(1).y == 200 && matches.get(1).getMatchIndex() == 1
+            && !matches.get(2).isMatch() && matches.get(3) == null;
+  }
+
+  @Test
+  public void test_080_findAny() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    Mat mBase = makeAnyBase(target);
+    Picture base = new Picture(mBase);
+    List<Picture> targets = makeAnyTargets(target);
+    Finder finder = new Finder(base);
+    finder.setLearnPriors(false);
+    // one entry per target in the given order: found, found, not found, null
+    List<Element> matches = finder.findAny(targets);
+    success &= isAnyFound(matches);
+    // best: returns with the first exact match, the others may not be searched
+    List<Element> best = finder.findAny(targets, true);
+    success &= best.size() == 4 && (best.get(0).getScore() > 0.99 || best.get(1).getScore() > 0.99);
+    // the sub-searches run in the shared pool: no threads beyond its parallelism
+    success &= Finder.getFindPool().getPoolSize() <= Finder.getFindPool().getParallelism();
+    String result = String.format("matches: %s pool: %s", matches, Finder.getFindPool());
+    for (Picture picture : targets.subList(1, 3)) {
+      picture.release();
+    }
+    mBase.release();
+    base.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_090_findPrepared() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    Mat mBase = makeAnyBase(target);
+    Picture base = new Picture(mBase);
+    List<Picture> targets = makeAnyTargets(target);
+    long outstanding = MatPool.getOutstandingBytes();
+    Finder finder = new Finder(base);
+    finder.setLearnPriors(false);
+    finder.prepare();
+    // the same matches as searched one by one, the shared preprocessing is kept between the calls
+    for (int n = 0; n < 3; n++) {
+      List<Element> matches = finder.find(targets);
+      success &= isAnyFound(matches);
+      for (int nTarget = 0; nTarget < 3; nTarget++) {
+        Finder single = new Finder(base);
+        single.setLearnPriors(false);
+        Element match = single.find(targets.get(nTarget));
+        success &= match.x == matches.get(nTarget).x && match.y == matches.get(nTarget).y
+                && Math.abs(match.getScore() - matches.get(nTarget).getScore()) < 1e-6;
+      }
+    }
+    // the shared preprocessing is given back to the MatPool
+    finder.release();
+    success &= !finder.isPrepared() && MatPool.getOutstandingBytes() == outstanding;
+    // released while sub-searches of findAny(targets, true) may still run: they keep the preprocessing
+    finder.prepare();
+    List<Element> best = finder.findAny(targets, true);
+    finder.release();
+    success &= best.get(0).getScore() > 0.99 || best.get(1).getScore() > 0.99;
+    success &= isAnyFound(new Finder(base).findAny(targets));
+    String result = String.format("%s", MatPool.getStatisticsString());
+    for (Picture picture : targets.subList(1, 3)) {
+      picture.release();
+    }
+    mBase.release();
+    base.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_100_findParallelStripes() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    // a result of more than Settings.FindParallelPixels (1000000): matched in stripes
+    Mat mBase = new Mat(1200, 1100, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    int[] places = new int[]{0, 290, 530, 1072};
+    for (int n = 0; n < places.length; n++) {
+      int x = 100 + 220 * n;
+      target.getContentBGR().copyTo(mBase.submat(places[n], places[n] + target.h, x, x + target.w));
+    }
+    // the last copy changed a bit: the best is the first
+    mBase.submat(1072, 1082, 760, 770).setTo(new Scalar(0, 0, 255));
+    Mat mExpected = new Mat();
+    Imgproc.matchTemplate(mBase, target.getContentBGR(), mExpected, Imgproc.TM_CCOEFF_NORMED);
+    Core.MinMaxLocResult expected = Core.minMaxLoc(mExpected);
+    Picture base = new Picture(mBase);
+    Finder finder = new Finder(base);
+    finder.setPyramid(0);
+    finder.setLearnPriors(false);
+    Element match = finder.find(target);
+    success &= match.x == expected.maxLoc.x && match.y == expected.maxLoc.y && match.x == 100 && match.y == 0
+            && Math.abs(match.getScore() - expected.maxVal) < 1e-4;
+    // matches at the stripe borders are found as well (from the first to the last row of the result)
+    Finder finderAll = new Finder(base);
+    finderAll.setPyramid(0);
+    List<Element> matches = finderAll.findAll(target);
+    int found = 0;
+    for (Element each : matches) {
+      for (int n = 0; n < places.length; n++) {
+        if (each.x == 100 + 220 * n && each.y == places[n]) {
+          found++;
+        }
+      }
+    }
+    success &= matches.size() == places.length && found == places.length;
+    String result = String.format("match: %s all: %d threads: %d", match, matches.size(),
+            Finder.getFindPool().getParallelism());
+    mExpected.release();
+    mBase.release();
+    base.release();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_110_matPool() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    MatPool.clear();
+    long[] before = MatPool.getStatistics();
+    long outstanding = MatPool.getOutstandingBytes();
+    // 100 x 100 float: 40000 bytes
+    Mat mFirst = MatPool.get(100, 100, CvType.CV_32F);
+    boolean success = MatPool.getOutstandingBytes() == outstanding + 40000;
+    MatPool.release(mFirst);
+    success &= MatPool.getOutstandingBytes() == outstanding && MatPool.getPooledBytes() == 40000;
+    // the same size and type again: the pooled Mat is reused
+    Mat mSecond = MatPool.get(100, 100, CvType.CV_32F);
+    success &= mSecond == mFirst && MatPool.getPooledBytes() == 0;
+    MatPool.release(mSecond);
+    // a budget of 10 KB: the pooled Mat is freed, a released Mat is not kept
+    MatPool.setSize(0.01);
+    success &= MatPool.getPooledBytes() == 0 && mSecond.empty();
+    Mat mThird = MatPool.get(100, 100, CvType.CV_32F);
+    MatPool.release(mThird);
+    success &= MatPool.getPooledBytes() == 0 && mThird.empty();
+    // Mats not taken from the pool are not touched
+    Mat mOther = new Mat(100, 100, CvType.CV_32F);
+    MatPool.release(mOther);
+    success &= !mOther.empty() && MatPool.getPooledBytes() == 0;
+    long[] after = MatPool.getStatistics();
+    // allocated, reused, freed
+    success &= after[0] == before[0] + 2 && after[1] == before[1] + 1 && after[2] == before[2] + 2;
+    String result = MatPool.getStatisticsString();
+    MatPool.setSize(SX.getOptionNumber("Settings.MatPoolSize", 64));
+    mOther.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  // 640 x 480 white, changed: (70, 70) 131 x 31, (260, 140) 10 x 10, (600, 400) 30 x 70
+  private Mat makeChanged(Mat mBase) {
+    Mat mChanged = mBase.clone();
+    mChanged.submat(70, 101, 70, 201).setTo(new Scalar(0, 0, 0));
+    mChanged.submat(140, 150, 260, 270).setTo(new Scalar(0, 0, 255));
+    mChanged.submat(400, 470, 600, 630).setTo(new Scalar(255, 0, 0));
+    return mChanged;
+  }
+
+  private boolean isRectangle(Element rect, int x, int y, int w, int h) {
+    return rect.x == x && rect.y == y && rect.w == w && rect.h == h;
+  }
+
+  @Test
+  public void test_120_tileHash() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    Mat mBase = new Mat(480, 640, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    Mat mChanged = makeChanged(mBase);
+    TileHash baseHash = new TileHash(mBase);
+    TileHash sameHash = new TileHash(mBase.clone());
+    TileHash changedHash = new TileHash(mChanged);
+    boolean success = !sameHash.hasChanged(baseHash) && sameHash.getChangedRegions(baseHash).isEmpty();
+    success &= changedHash.hasChanged(baseHash);
+    List<Element> regions = changedHash.getChangedRegions(baseHash);
+    // tiles (1..3, 1) and (4, 2) touch diagonally: one region
+    // tiles (9, 6..7): the last tile row is clipped to the content
+    success &= regions.size() == 2 && isRectangle(regions.get(0), 64, 64, 256, 128)
+            && isRectangle(regions.get(1), 576, 384, 64, 96);
+    // not comparable (other size): the whole content
+    Mat mSmaller = mBase.submat(0, 400, 0, 600);
+    List<Element> whole = new TileHash(mSmaller).getChangedRegions(baseHash);
+    success &= whole.size() == 1 && isRectangle(whole.get(0), 0, 0, 600, 400);
+    String result = String.format("regions: %s", regions);
+    mBase.release();
+    mChanged.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_130_detectChanges() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    Mat mBase = new Mat(480, 640, CvType.CV_8UC3, new Scalar(255, 255, 255));
+    Mat mChanged = makeChanged(mBase);
+    TileHash baseHash = new TileHash(mBase);
+    TileHash changedHash = new TileHash(mChanged);
+    boolean success = Finder.detectChanges(mBase, baseHash, mBase, new TileHash(mBase), 1).isEmpty();
+    // only the changed tiles are compared: the same as comparing the whole content
+    List<Element> changes = Finder.detectChanges(mBase, baseHash, mChanged, changedHash, 1);
+    List<Element> allChanges = Finder.mergeRectangles(Finder.detectChanges(mBase, mChanged), 1);
+    success &= changes.size() == 3 && allChanges.size() == 3;
+    for (Element change : changes) {
+      boolean same = false;
+      for (Element other : allChanges) {
+        same |= isRectangle(change, other.x, other.y, other.w, other.h);
+      }
+      success &= same;
+    }
+    // the small change (10 x 10) is dropped with a minimum size of 200 pixels
+    List<Element> largeChanges = Finder.detectChanges(mBase, baseHash, mChanged, changedHash, 200);
+    success &= largeChanges.size() == 2;
+    for (Element change : largeChanges) {
+      success &= change.w * change.h >= 200 && !(change.x > 250 && change.x < 270);
+    }
+    String result = String.format("changes: %s", changes);
+    mBase.release();
+    mChanged.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_140_mergeRectangles() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    List<Element> rectangles = new ArrayList<>();
+    rectangles.add(new Element(100, 100, 5, 5));
+    rectangles.add(new Element(0, 0, 10, 10));
+    rectangles.add(new Element(20, 5, 10, 10));
+    rectangles.add(new Element(10, 0, 10, 10));
+    // adjacent: merged one after the other with a distance of 1
+    List<Element> merged = Finder.mergeRectangles(rectangles, 1);
+    boolean success = merged.size() == 2;
+    for (Element rect : merged) {
+      success &= isRectangle(rect, 0, 0, 30, 15) || isRectangle(rect, 100, 100, 5, 5);
+    }
+    // distance 0: only overlapping rectangles are merged
+    success &= Finder.mergeRectangles(rectangles, 0).size() == 4;
+    // the given list is not changed
+    success &= rectangles.size() == 4;
+    String result = String.format("merged: %s", merged);
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.test;
+
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.LastSeenIndex;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.core.SXTest;
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.io.File;
+import java.io.IOException;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestLastSeenIndex {
+
+  static SXLog log = SX.getSXLog("SX_TestLastSeenIndex");
+
+  private static File fIndex = null;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    log.on(SXLog.INFO);
+    SX.loadNative(SX.NATIVES.OPENCV);
+    fIndex = File.createTempFile("lastseen", ".idx");
+    fIndex.delete();
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    LastSeenIndex.use(null);
+    fIndex.delete();
+  }
+
+  @Before
+  public void setUp() {
+  }
+
+  @After
+  public void tearDown() {
+    log.info("%s", currentTest);
+  }
+
+  private SXTest currentTest;
+
+  private Picture makeTarget() {
+    Mat mTarget = new Mat(20, 30, CvType.CV_8UC3, new Scalar(0, 0, 0));
+    mTarget.submat(5, 15, 5, 25).setTo(new Scalar(0, 0, 255));
+    return new Picture(mTarget);
+  }
+
+  private Element makeMatch(int x, int y, double score) {
+    Element match = new Element(x, y, 30, 20);
+    match.setScore(score);
+    return match;
+  }
+
+  @Test
+  public void test_010_roundTrip() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    LastSeenIndex.use(fIndex);
+    Picture target = makeTarget();
+    Element base = new Element(0, 0, 800, 600);
+    boolean success = LastSeenIndex.get(target, base) == null;
+    LastSeenIndex.put(target, base, makeMatch(100, 200, 0.95));
+    LastSeenIndex.Seen seen = LastSeenIndex.get(target, base);
+    success &= seen != null && seen.x == 100 && seen.y == 200 && seen.w == 30 && seen.h == 20
+            && Math.abs(seen.score - 0.95) < 1e-6 && seen.scale == 1;
+    // same target in another base: not known
+    success &= LastSeenIndex.get(target, new Element(0, 0, 1024, 768)) == null;
+    // kept on disk: still there after reopen
+    LastSeenIndex.use(fIndex);
+    seen = LastSeenIndex.get(target, base);
+    success &= seen != null && seen.x == 100 && seen.y == 200;
+    // the stale entry is replaced by the newer match
+    LastSeenIndex.put(target, base, makeMatch(300, 50, 0.9));
+    seen = LastSeenIndex.get(target, base);
+    success &= seen != null && seen.x == 300 && seen.y == 50 && Math.abs(seen.score - 0.9) < 1e-6;
+    String result = String.format("seen: %s", seen);
+    LastSeenIndex.clear();
+    success &= LastSeenIndex.get(target, base) == null;
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_020_collisions() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    fIndex.delete();
+    SX.setOption("Settings.LastSeenIndexSize", "64");
+    LastSeenIndex.use(fIndex);
+    Picture target = makeTarget();
+    int entries = 300;
+    // far more bases than slots: slots are probed, collide and the oldest entries are replaced
+    for (int n = 0; n < entries; n++) {
+      LastSeenIndex.put(target, new Element(0, 0, 100 + n, 600), makeMatch(n, 0, 0.9));
+    }
+    boolean success = true;
+    int kept = 0;
+    for (int n = 0; n < entries; n++) {
+      LastSeenIndex.Seen seen = LastSeenIndex.get(target, new Element(0, 0, 100 + n, 600));
+      if (seen != null) {
+        // never the place of another base
+        success &= seen.x == n;
+        kept++;
+      }
+    }
+    LastSeenIndex.Seen last = LastSeenIndex.get(target, new Element(0, 0, 100 + entries - 1, 600));
+    success &= last != null && last.x == entries - 1 && kept > 0 && kept <= 64;
+    String result = String.format("kept: %d of %d", kept, entries);
+    SX.setOption("Settings.LastSeenIndexSize", "4096");
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.test;
+
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.core.SXTest;
+import com.sikulix.devices.local.LocalDevice;
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.awt.Rectangle;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestLocalDevice {
+
+  static SXLog log = SX.getSXLog("SX_TestLocalDevice");
+
+  @BeforeClass
+  public static void setUpClass() {
+    log.on(SXLog.INFO);
+    SX.loadNative(SX.NATIVES.OPENCV);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+  }
+
+  @Before
+  public void setUp() {
+  }
+
+  @After
+  public void tearDown() {
+    log.info("%s", currentTest);
+  }
+
+  private SXTest currentTest;
+
+  @Test
+  public void test_010_captureStream() {
+    currentTest = new SXTest().onlyLocal();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    if (SX.isHeadless()) {
+      currentTest.setResult("headless: not testing");
+      return;
+    }
+    LocalDevice device = SX.getSXLOCALDEVICE();
+    Rectangle all = device.getAllMonitors();
+    Element what = new Element(all.x, all.y, Math.min(200, all.width), Math.min(100, all.height));
+    device.startStreaming(20);
+    boolean success = device.isStreaming();
+    long frames = device.getFrameNumber();
+    SX.pause(0.5);
+    success &= device.getFrameNumber() > frames;
+    // taken from the latest frame
+    Picture streamed = device.capture(what);
+    success &= streamed.hasContent() && streamed.w == what.w && streamed.h == what.h && what.hasContent();
+    // a copy: the frames captured later into the same ring slots do not change it
+    Mat mKept = streamed.getContent().clone();
+    SX.pause(0.3);
+    success &= Core.norm(mKept, streamed.getContent(), Core.NORM_INF) == 0;
+    // partly outside the streamed area: captured directly
+    Element outside = new Element(all.x + all.width - 50, all.y, 100, 50);
+    Picture direct = device.capture(outside);
+    success &= direct.hasContent() && direct.w == 100;
+    String result = String.format("frames: %d", device.getFrameNumber());
+    device.stopStreaming();
+    success &= !device.isStreaming() && device.getFrameNumber() == 0;
+    Picture notStreamed = device.capture(what);
+    success &= notStreamed.hasContent() && notStreamed.w == what.w;
+    mKept.release();
+    for (Picture picture : new Picture[]{streamed, direct, notStreamed}) {
+      picture.release();
+    }
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.test;
+
+import com.sikulix.api.Do;
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.api.PictureCache;
+import com.sikulix.core.MatTracker;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.core.SXTest;
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+
+/**
+ * loading and releasing Pictures without a screen (TestApiPicture needs the jar and the net)
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestPicture {
+
+  static SXLog log = SX.getSXLog("SX_TestPicture");
+
+  private static String defaultImagePath = "SX_Images";
+  private static String mavenRoot = "target/classes";
+  private static String imageNameDefault = "sikulix2";
+
+  @BeforeClass
+  public static void setUpClass() {
+    log.on(SXLog.INFO);
+    SX.loadNative(SX.NATIVES.OPENCV);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    PictureCache.clear();
+  }
+
+  @Before
+  public void setUp() {
+  }
+
+  @After
+  public void tearDown() {
+    log.info("%s", currentTest);
+  }
+
+  private SXTest currentTest;
+
+  @Test
+  public void test_010_loadImageFromCache() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    PictureCache.clear();
+    long hits = PictureCache.getStatistics()[0];
+    Picture img = new Picture(imageNameDefault);
+    Picture imgCached = new Picture(imageNameDefault);
+    success &= img.isValid() && imgCached.isValid();
+    success &= PictureCache.getStatistics()[0] == hits + 1;
+    success &= PictureCache.getCount() == 1 && PictureCache.getBytes() > 0;
+    success &= img.getContent() != imgCached.getContent();
+    String result = String.format("(%s -> %s) Image %s %s", img.getTimeToLoad(), imgCached.getTimeToLoad(),
+            img.getName(), PictureCache.getStatisticsString());
+    img.release();
+    imgCached.release();
+    PictureCache.clear();
+    success &= PictureCache.getCount() == 0 && PictureCache.getBytes() == 0;
+    assert success;
+    currentTest.setResult(result);
+  }
+
+  @Test
+  public void test_020_releasePicture() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    PictureCache.clear();
+    int live = MatTracker.getLiveCount();
+    Picture picture;
+    try (Picture img = new Picture(imageNameDefault)) {
+      picture = img;
+      success &= img.isValid();
+      // the Picture's content and the master copy kept by the cache
+      success &= MatTracker.getLiveCount() > live + 1 && PictureCache.getCount() == 1;
+    }
+    success &= !picture.hasContent();
+    PictureCache.clear();
+    success &= MatTracker.getLiveCount() == live;
+    String result = MatTracker.getStatisticsString();
+    assert success;
+    currentTest.setResult(result);
+  }
+
+  private boolean isPixel(Mat mat, double tolerance, double... expected) {
+    double[] pixel = mat.get(0, 0);
+    if (pixel.length != expected.length) {
+      return false;
+    }
+    for (int n = 0; n < expected.length; n++) {
+      if (Math.abs(pixel[n] - expected[n]) > tolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Mat makeMat(int type, int argb) {
+    BufferedImage bImg = new BufferedImage(3, 2, type);
+    for (int y = 0; y < 2; y++) {
+      for (int x = 0; x < 3; x++) {
+        bImg.setRGB(x, y, argb);
+      }
+    }
+    Mat mat = new Mat();
+    Element.makeMat(bImg, mat);
+    return mat;
+  }
+
+  @Test
+  public void test_030_makeMat() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    // A 128 R 200 G 100 B 50
+    int argb = 0x80c86432;
+    boolean success = true;
+    Mat mat = makeMat(BufferedImage.TYPE_INT_RGB, argb);
+    success &= isPixel(mat, 0, 50, 100, 200);
+    mat.release();
+    mat = makeMat(BufferedImage.TYPE_INT_BGR, argb);
+    success &= isPixel(mat, 0, 50, 100, 200);
+    mat.release();
+    mat = makeMat(BufferedImage.TYPE_INT_ARGB, argb);
+    success &= isPixel(mat, 0, 50, 100, 200, 128);
+    mat.release();
+    // stored premultiplied, the Mat gets straight alpha (rounding of the premultiplied values)
+    mat = makeMat(BufferedImage.TYPE_INT_ARGB_PRE, argb);
+    success &= isPixel(mat, 2, 50, 100, 200, 128);
+    mat.release();
+    mat = makeMat(BufferedImage.TYPE_4BYTE_ABGR, argb);
+    success &= isPixel(mat, 0, 50, 100, 200, 128);
+    mat.release();
+    mat = makeMat(BufferedImage.TYPE_3BYTE_BGR, argb);
+    success &= isPixel(mat, 0, 50, 100, 200);
+    mat.release();
+    // setRGB would convert to the linear gray color space: the raster is set directly
+    BufferedImage bGray = new BufferedImage(3, 2, BufferedImage.TYPE_BYTE_GRAY);
+    bGray.getRaster().setSample(0, 0, 0, 128);
+    mat = new Mat();
+    Element.makeMat(bGray, mat);
+    success &= mat.channels() == 1 && isPixel(mat, 0, 128);
+    mat.release();
+    // no direct path: drawn into a 3BYTE_BGR image (5/6/5 bits per color)
+    mat = makeMat(BufferedImage.TYPE_USHORT_565_RGB, argb);
+    success &= isPixel(mat, 8, 50, 100, 200);
+    mat.release();
+    assert success;
+    currentTest.setResult("INT_RGB, INT_BGR, INT_ARGB, INT_ARGB_PRE, 4BYTE_ABGR, 3BYTE_BGR, BYTE_GRAY, USHORT_565_RGB");
+  }
+
+  @Test
+  public void test_031_makeMatBuffer() throws Exception {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    Field field = Element.class.getDeclaredField("makeMatBuffer");
+    field.setAccessible(true);
+    ThreadLocal<?> buffer = (ThreadLocal<?>) field.get(null);
+    int small = 100;
+    int large = (int) Math.sqrt(SX.getOptionNumber("Settings.MakeMatBufferMax", 1920 * 1080 * 4) / 3) + 2;
+    boolean success = true;
+    for (int size : new int[]{small, large, small}) {
+      BufferedImage bImg = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+      bImg.setRGB(size - 1, size - 1, 0xc86432);
+      Mat mat = new Mat();
+      Element.makeMat(bImg, mat);
+      success &= mat.rows() == size && Core.countNonZero(mat.reshape(1)) == 3;
+      byte[] kept = (byte[]) buffer.get();
+      // the buffer is kept per thread only up to Settings.MakeMatBufferMax
+      success &= size == small ? kept != null && kept.length == size * size * 3 : kept == null;
+      mat.release();
+    }
+    assert success;
+    currentTest.setResult("kept for %dx%d, not for %dx%d", small, small, large, large);
+  }
+
+  @Test
+  public void test_032_getBufferedImage() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = true;
+    Mat mBGRA = new Mat(20, 30, CvType.CV_8UC4, new Scalar(50, 100, 200, 128));
+    Mat mBGR = new Mat(20, 30, CvType.CV_8UC3, new Scalar(50, 100, 200));
+    Mat mGray = new Mat(20, 30, CvType.CV_8UC1, new Scalar(128));
+    // not continuous: a part of a larger Mat
+    Mat mPart = new Mat(40, 60, CvType.CV_8UC3, new Scalar(0, 0, 0));
+    mBGR.copyTo(mPart.submat(10, 30, 20, 50));
+    Mat mSub = mPart.submat(10, 30, 20, 50);
+    Object[][] cases = new Object[][]{
+            {mBGRA, BufferedImage.TYPE_4BYTE_ABGR, 0x80c86432},
+            {mBGR, BufferedImage.TYPE_3BYTE_BGR, 0xffc86432},
+            {mGray, BufferedImage.TYPE_BYTE_GRAY, 128},
+            {mSub, BufferedImage.TYPE_3BYTE_BGR, 0xffc86432}};
+    for (Object[] test : cases) {
+      Mat mat = (Mat) test[0];
+      BufferedImage bImg = Element.getBufferedImage(mat);
+      success &= bImg.getType() == (int) test[1] && bImg.getWidth() == 30 && bImg.getHeight() == 20;
+      if (bImg.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+        success &= bImg.getRaster().getSample(29, 19, 0) == (int) test[2];
+      } else {
+        success &= bImg.getRGB(29, 19) == (int) test[2];
+      }
+      // back again: the same content
+      Mat mBack = new Mat();
+      Element.makeMat(bImg, mBack);
+      success &= Core.norm(mat, mBack, Core.NORM_INF) == 0;
+      mBack.release();
+    }
+    success &= !mSub.isContinuous();
+    for (Mat mat : new Mat[]{mBGRA, mBGR, mGray, mPart}) {
+      mat.release();
+    }
+    assert success;
+    currentTest.setResult("BGRA, BGR, gray, not continuous BGR");
+  }
+}
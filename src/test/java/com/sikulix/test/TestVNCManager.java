@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.test;
+
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.core.SXTest;
+import com.sikulix.devices.vnc.VNCDevice;
+import com.sikulix.devices.vnc.VNCManager;
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * VNCManager against an in-process RFB server (RFBStub): no real VNC server needed
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestVNCManager {
+
+  static SXLog log = SX.getSXLog("SX_TestVNCManager");
+
+  private static RFBStub server = null;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    log.on(SXLog.INFO);
+    SX.loadNative(SX.NATIVES.OPENCV);
+    SX.setOption("Settings.VNCMaxSessions", "2");
+    SX.setOption("Settings.VNCHealthInterval", "1");
+    server = new RFBStub(320, 240, 200, 100, 50);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    VNCManager.closeAll();
+    server.close();
+    SX.setOption("Settings.VNCMaxSessions", "64");
+    SX.setOption("Settings.VNCHealthInterval", "5");
+  }
+
+  @Before
+  public void setUp() {
+  }
+
+  @After
+  public void tearDown() {
+    log.info("%s", currentTest);
+  }
+
+  private SXTest currentTest;
+
+  private boolean isStubScreen(Picture picture) {
+    if (!picture.hasContent() || picture.w != server.width || picture.h != server.height) {
+      return false;
+    }
+    double[] bgr = picture.getContentBGR().get(server.height / 2, server.width / 2);
+    return bgr[0] == server.blue && bgr[1] == server.green && bgr[2] == server.red;
+  }
+
+  private int getMessageThreads() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("SX.VNCMessages")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void test_010_sessionLimit() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    List<VNCDevice> sessions = new ArrayList<>();
+    for (int n = 0; n < 3; n++) {
+      sessions.add(VNCManager.open("127.0.0.1", server.getPort(), "vnc"));
+    }
+    // Settings.VNCMaxSessions = 2
+    boolean success = sessions.get(0) != null && sessions.get(1) != null && sessions.get(2) == null;
+    success &= VNCManager.getSessionCount() == 2 && server.getConnects() == 2;
+    // one message loop per connection in the message pool
+    success &= getMessageThreads() >= 2;
+    for (VNCDevice vnc : sessions.subList(0, 2)) {
+      vnc.click(new Element(100, 100));
+      success &= vnc.flush() && isStubScreen(vnc.capture());
+      success &= vnc.getMetrics().alive && vnc.getMetrics().sentEvents >= 3;
+    }
+    success &= server.getPointerEvents() >= 6;
+    String result = String.format("sessions: %d pointer events: %d\n%s",
+            VNCManager.getSessionCount(), server.getPointerEvents(), VNCManager.getMetrics());
+    VNCManager.closeAll();
+    success &= VNCManager.getSessionCount() == 0;
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_020_reconnect() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    VNCDevice vnc = VNCManager.open("127.0.0.1", server.getPort(), "vnc");
+    boolean success = vnc != null && isStubScreen(vnc.capture());
+    int connects = server.getConnects();
+    // the server drops the connection: the health check (every second) reconnects
+    server.dropAll();
+    long waitUntil = new Date().getTime() + 10000;
+    while (success && new Date().getTime() < waitUntil
+            && !(vnc.getMetrics().reconnects > 0 && vnc.isAlive())) {
+      SX.pause(0.1);
+    }
+    success &= vnc.getMetrics().reconnects > 0 && vnc.isAlive() && server.getConnects() > connects;
+    success &= isStubScreen(vnc.capture());
+    String result = String.format("after reconnect: %s", vnc.getMetrics());
+    vnc.stop();
+    success &= VNCManager.getSessionCount() == 0;
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  /**
+   * a minimal RFB server (3.3 - 3.8, VNC authentication accepting any password): a screen of one color,
+   * full updates as Raw rectangle in the client's pixel format, incremental update requests are not answered,
+   * input events are counted
+   */
+  static class RFBStub implements Runnable {
+
+    final int width;
+    final int height;
+    final int red;
+    final int green;
+    final int blue;
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> clients = new ArrayList<>();
+    private int connects = 0;
+    private int pointerEvents = 0;
+
+    RFBStub(int width, int height, int red, int green, int blue) throws IOException {
+      this.width = width;
+      this.height = height;
+      this.red = red;
+      this.green = green;
+      this.blue = blue;
+      serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+      Thread thread = new Thread(this, "RFBStub");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    synchronized int getConnects() {
+      return connects;
+    }
+
+    synchronized int getPointerEvents() {
+      return pointerEvents;
+    }
+
+    synchronized void dropAll() {
+      for (Socket client : clients) {
+        try {
+          client.close();
+        } catch (IOException e) {
+        }
+      }
+      clients.clear();
+    }
+
+    void close() {
+      try {
+        serverSocket.close();
+      } catch (IOException e) {
+      }
+      dropAll();
+    }
+
+    @Override
+    public void run() {
+      while (!serverSocket.isClosed()) {
+        try {
+          final Socket client = serverSocket.accept();
+          synchronized (this) {
+            clients.add(client);
+            connects++;
+          }
+          Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+              serve(client);
+            }
+          }, "RFBStub-" + connects);
+          thread.setDaemon(true);
+          thread.start();
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    private void serve(Socket client) {
+      try (Socket socket = client) {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeBytes("RFB 003.008\n");
+        out.flush();
+        byte[] version = new byte[12];
+        in.readFully(version);
+        int minor = Integer.parseInt(new String(version, 8, 3, "US-ASCII"));
+        // VNC authentication only
+        if (minor >= 7) {
+          out.writeByte(1);
+          out.writeByte(2);
+          out.flush();
+          in.readUnsignedByte();
+        } else {
+          out.writeInt(2);
+        }
+        out.write(new byte[16]);
+        out.flush();
+        in.readFully(new byte[16]);
+        out.writeInt(0);
+        out.flush();
+        // ClientInit (shared flag), ServerInit
+        in.readUnsignedByte();
+        out.writeShort(width);
+        out.writeShort(height);
+        PixelFormat format = new PixelFormat();
+        format.write(out);
+        byte[] name = "RFBStub".getBytes("US-ASCII");
+        out.writeInt(name.length);
+        out.write(name);
+        out.flush();
+        while (true) {
+          int type = in.readUnsignedByte();
+          if (type == 0) {
+            in.readFully(new byte[3]);
+            format.read(in);
+          } else if (type == 2) {
+            in.readUnsignedByte();
+            in.readFully(new byte[4 * in.readUnsignedShort()]);
+          } else if (type == 3) {
+            boolean incremental = in.readUnsignedByte() != 0;
+            in.readFully(new byte[8]);
+            if (!incremental) {
+              sendScreen(out, format);
+            }
+          } else if (type == 4) {
+            in.readFully(new byte[7]);
+          } else if (type == 5) {
+            in.readFully(new byte[5]);
+            synchronized (this) {
+              pointerEvents++;
+            }
+          } else if (type == 6) {
+            in.readFully(new byte[3]);
+            in.readFully(new byte[in.readInt()]);
+          } else {
+            throw new IOException("RFBStub: message type not supported: " + type);
+          }
+        }
+      } catch (IOException e) {
+        log.trace("RFBStub: connection ended: %s", e.getMessage());
+      }
+    }
+
+    private void sendScreen(DataOutputStream out, PixelFormat format) throws IOException {
+      int bytes = format.bitsPerPixel / 8;
+      long pixel = ((long) (red * format.redMax / 255) << format.redShift)
+              | ((long) (green * format.greenMax / 255) << format.greenShift)
+              | ((long) (blue * format.blueMax / 255) << format.blueShift);
+      byte[] pixelBytes = new byte[bytes];
+      for (int n = 0; n < bytes; n++) {
+        int shift = 8 * (format.bigEndian ? bytes - 1 - n : n);
+        pixelBytes[n] = (byte) (pixel >> shift);
+      }
+      byte[] pixels = new byte[width * height * bytes];
+      for (int n = 0; n < pixels.length; n++) {
+        pixels[n] = pixelBytes[n % bytes];
+      }
+      // FramebufferUpdate: one Raw rectangle
+      out.writeByte(0);
+      out.writeByte(0);
+      out.writeShort(1);
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(width);
+      out.writeShort(height);
+      out.writeInt(0);
+      out.write(pixels);
+      out.flush();
+    }
+  }
+
+  static class PixelFormat {
+    int bitsPerPixel = 32;
+    int depth = 24;
+    boolean bigEndian = false;
+    boolean trueColor = true;
+    int redMax = 255;
+    int greenMax = 255;
+    int blueMax = 255;
+    int redShift = 16;
+    int greenShift = 8;
+    int blueShift = 0;
+
+    void read(DataInputStream in) throws IOException {
+      bitsPerPixel = in.readUnsignedByte();
+      depth = in.readUnsignedByte();
+      bigEndian = in.readUnsignedByte() != 0;
+      trueColor = in.readUnsignedByte() != 0;
+      redMax = in.readUnsignedShort();
+      greenMax = in.readUnsignedShort();
+      blueMax = in.readUnsignedShort();
+      redShift = in.readUnsignedByte();
+      greenShift = in.readUnsignedByte();
+      blueShift = in.readUnsignedByte();
+      in.readFully(new byte[3]);
+      if (!trueColor) {
+        throw new IOException("RFBStub: color map not supported");
+      }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeByte(bitsPerPixel);
+      out.writeByte(depth);
+      out.writeByte(bigEndian ? 1 : 0);
+      out.writeByte(trueColor ? 1 : 0);
+      out.writeShort(redMax);
+      out.writeShort(greenMax);
+      out.writeShort(blueMax);
+      out.writeByte(redShift);
+      out.writeByte(greenShift);
+      out.writeByte(blueShift);
+      out.write(new byte[3]);
+    }
+  }
+}
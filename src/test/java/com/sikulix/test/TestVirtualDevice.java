@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 - sikulix.com - MIT license
+ */
+
+package com.sikulix.test;
+
+import com.sikulix.api.Do;
+import com.sikulix.api.Element;
+import com.sikulix.api.Picture;
+import com.sikulix.core.Finder;
+import com.sikulix.core.FrameBroker;
+import com.sikulix.core.SX;
+import com.sikulix.core.SXLog;
+import com.sikulix.core.SXTest;
+import com.sikulix.devices.virtual.VirtualDevice;
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestVirtualDevice {
+
+  static SXLog log = SX.getSXLog("SX_TestVirtualDevice");
+
+  private static String defaultImagePath = "SX_Images";
+  private static String mavenRoot = "target/classes";
+  private static String imageNameDefault = "sikulix2";
+
+  @BeforeClass
+  public static void setUpClass() {
+    log.on(SXLog.INFO);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+  }
+
+  @Before
+  public void setUp() {
+  }
+
+  @After
+  public void tearDown() {
+    log.info("%s", currentTest);
+  }
+
+  private SXTest currentTest;
+
+  @Test
+  public void test_010_findOnVirtualDevice() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    VirtualDevice device = (VirtualDevice) new VirtualDevice().start(800, 600);
+    device.setTime(0);
+    device.show(target, 100, 50).moveTo(300, 250, 1).vanishOnClick();
+    Element match = new Finder(device.capture()).find(target);
+    success &= match.x == 100 && match.y == 50;
+    device.advance(1);
+    match = new Finder(device.capture()).find(target);
+    success &= match.x == 300 && match.y == 250;
+    device.click(match);
+    success &= !new Finder(device.capture()).find(target).isValid() && device.getInputs().size() == 1;
+    String result = String.format("match: %s inputs: %s", match, device.getInputs());
+    device.stop();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_020_waitVanishStatic() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    VirtualDevice device = (VirtualDevice) new VirtualDevice().start(800, 600);
+    device.setTime(0);
+    device.show(target, 100, 50);
+    Element where = new Element(0, 0, 800, 600);
+    where.setDevice(device);
+    // nothing changes: the finds are skipped, but the target must not be taken as vanished
+    long start = new Date().getTime();
+    boolean vanished = Finder.runWaitVanish(target, where, 1);
+    long waited = new Date().getTime() - start;
+    success &= !vanished && waited >= 1000;
+    String result = String.format("vanished: %s after %d msec", vanished, waited);
+    device.stop();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_021_waitVanish() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    VirtualDevice device = (VirtualDevice) new VirtualDevice().start(800, 600);
+    device.show(target, 100, 50).vanishAfter(0.5);
+    Element where = new Element(0, 0, 800, 600);
+    where.setDevice(device);
+    long start = new Date().getTime();
+    boolean vanished = Finder.runWaitVanish(target, where, 3);
+    long waited = new Date().getTime() - start;
+    success &= vanished && waited < 3000;
+    String result = String.format("vanished: %s after %d msec", vanished, waited);
+    device.stop();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_022_waitVanishDamage() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    Element where = new Element(0, 0, 800, 600);
+    // the device reports no change: the target is still there
+    DamageDevice device = (DamageDevice) new DamageDevice().start(800, 600);
+    device.setTime(0);
+    device.show(target, 100, 50);
+    where.setDevice(device);
+    boolean vanishedStatic = Finder.runWaitVanish(target, where, 1);
+    success &= !vanishedStatic && device.queries > 0;
+    device.stop();
+    // the device reports the changes at the target: found again until it has vanished
+    device = (DamageDevice) new DamageDevice().start(800, 600);
+    device.show(target, 100, 50).vanishAfter(0.5);
+    device.damage.add(new Element(100, 50, target.w, target.h));
+    where.setDevice(device);
+    long start = new Date().getTime();
+    boolean vanished = Finder.runWaitVanish(target, where, 3);
+    long waited = new Date().getTime() - start;
+    success &= vanished && waited < 3000;
+    String result = String.format("static: %s vanished: %s after %d msec", vanishedStatic, vanished, waited);
+    device.stop();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  @Test
+  public void test_030_frameBroker() {
+    currentTest = new SXTest();
+    if (currentTest.shouldNotRun()) {
+      return;
+    }
+    boolean success = Do.setBundlePath(mavenRoot, defaultImagePath);
+    Picture target = new Picture(imageNameDefault);
+    VirtualDevice device = (VirtualDevice) new VirtualDevice().start(400, 300);
+    device.setTime(0);
+    Element where = new Element(0, 0, 400, 300);
+    where.setDevice(device);
+    where.setObserveScanRate(20);
+    // one broker (one capture per scan cycle) for all subscribers of the same Element
+    FrameBroker broker = FrameBroker.subscribe(where);
+    success &= FrameBroker.subscribe(where) == broker && broker.getSubscribers() == 2;
+    Element holder = new Element();
+    FrameBroker.Frame first = broker.next(-1, holder);
+    success &= first != null && holder.hasContent() && holder.getContent().cols() == 400;
+    device.show(target, 100, 50);
+    // a slow subscriber gets the latest frame, the ones in between are dropped
+    SX.pause(0.5);
+    FrameBroker.Frame latest = broker.next(first.getNumber());
+    success &= latest.getNumber() > first.getNumber() + 1 && broker.getDroppedCount() > 0;
+    Picture latestPicture = new Picture(latest.getContent());
+    Element match = new Finder(latestPicture).find(target);
+    success &= match.x == 100 && match.y == 50;
+    // the holder still has the content of the first frame
+    Picture firstPicture = new Picture(holder.getContent());
+    success &= !new Finder(firstPicture).find(target).isValid();
+    // capturing stops with the last subscriber, a new subscriber gets a new broker
+    broker.unsubscribe();
+    broker.unsubscribe();
+    success &= broker.getSubscribers() == 0 && broker.next(latest.getNumber()) == null;
+    FrameBroker other = FrameBroker.subscribe(where);
+    success &= other != broker;
+    other.unsubscribe();
+    String result = String.format("%s", broker);
+    latestPicture.release();
+    firstPicture.release();
+    holder.release();
+    device.stop();
+    target.release();
+    assert success;
+    currentTest.setResult("%s", result);
+  }
+
+  /**
+   * knows itself what changed (like VNCDevice) - the changes are given by the test
+   */
+  private static class DamageDevice extends VirtualDevice {
+    List<Element> damage = new ArrayList<>();
+    int queries = 0;
+
+    @Override
+    public boolean isDamageTracked() {
+      return true;
+    }
+
+    @Override
+    public synchronized List<Element> getDamage(Element what, long since) {
+      queries++;
+      return new ArrayList<>(damage);
+    }
+  }
+}